@@ -1,18 +1,44 @@
 package cpen221.mp3.cache;
 
-import java.time.LocalDateTime;
+import java.lang.ref.WeakReference;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class Cache<T extends Cacheable> {
 
     /*
-    RI: capacity is not null and is the largest size of the CacheMap
-        timeout is not null and is the largest time an item can exist in the cache.
-        cacheMap contains all objects in the cache as keys and the TimePair is the value.
-            for each TimePair value, .getExpiryTime() returns the time at which the cached
-            item expires and .getLastAccess() returns the most recent time the item was
-            accessed.
+    RI: maxWeight is not null and is the largest total weight of the objects in cacheMap
+        totalWeight is the sum of node.weight over all nodes in cacheMap and is <= maxWeight
+        for each node, node.weight is weigher.weigh(node.object)
+        timeoutNanos is not null and is the largest time in nanoseconds an item can exist in
+            the cache.
+        cacheMap contains exactly one entry for each object in the cache, mapping object.id()
+            to the Node holding the object. For each node, node.times.getExpiryTime()
+            returns the time at which the cached item expires and
+            node.times.getLastAccess() returns the most recent time the item was accessed.
+        the nodes of cacheMap form a doubly linked list from head to tail ordered by their
+            last access, so head is the least recently accessed object and tail is the most
+            recently accessed object. head and tail are null if and only if the cache is empty.
+            In concurrent mode the list only reflects the reads that have been drained from
+            readBuffer.
+        while scheduler is running, every node in cacheMap has exactly one expiry task that
+            is queued in scheduler or is being run by it.
+        readBuffer and draining are null if and only if concurrent is false.
+        removals is null if and only if listener is null, otherwise it holds the objects that
+            have been removed from the cache but not yet passed to listener.
+        stats is not null.
+        loading maps the id of every object being loaded or refreshed by get(id, loader) to
+            the load, and every load in it has not completed yet.
+        refresher is not null if refreshNanos > 0.
      */
 
     /*
@@ -25,19 +51,57 @@ public class Cache<T extends Cacheable> {
     Thread Safety Arguments:
         DSIZE and DTIMEOUT are final, and immutable variables, thus are thread safe
 
-        capacity and timeout are final and immutable variables, thus are thread safe
+        maxWeight, weigher and timeoutNanos are final and immutable variables, thus are
+        thread safe
+
+        totalWeight: is only read or written inside synchronized blocks
 
         cacheMap: this uses concurrent hashMap which has operations that are thread safe,
         however when being accesses, must be wrapped in a synchronized block which we do
 
+        head and tail: the recency list is only read or relinked inside synchronized blocks
+
+        concurrent: is final and immutable, thus is thread safe
+
+        readBuffer: records reads with atomic operations only, and is only drained inside
+        synchronized blocks, so hits never wait for the lock on this cache
+
+        draining: is atomic, so only one reader at a time tries to lock this cache to drain
+        readBuffer and the rest carry on
+
+        node.times: is final and is updated in place. Gets only write its last access time and
+        touches only write its expiry time, both volatile, so they never lose each other's change
+
+        scheduler: is final and thread safe, tasks it runs lock this cache before
+        touching cacheMap
+
+        listener and removals: listener is final. removals is a concurrent queue, filled while
+        holding the lock on this cache and emptied after the lock is released, so a slow
+        listener never holds up other threads using the cache
+
+        loading: is a concurrent hashMap, and putIfAbsent lets exactly one of the threads that
+        miss on an id start its load. The load is removed only after it has put its object,
+        and the loading thread checks the cache again after winning, so threads that miss on
+        the same id at the same time share a single load. A refresh ahead is also a load in
+        loading, so an object is refreshed by one thread at a time and a miss that happens
+        during a refresh waits for it
+
+        refreshNanos and refresher: are final, and refresher is thread safe
+
+        stats: is final and thread safe, and is updated without holding the lock on this
+        cache so that counting a hit never makes it wait
+
         put: this method is thread safe because we wrap sections that access the cacheMap in
         synchronized blocks
 
         get: this method is thread safe because we wrap sections that access the cacheMap in
-        synchronized blocks
+        synchronized blocks. In concurrent mode a hit only reads cacheMap, which is a concurrent
+        hashMap, and hands the recency update to readBuffer. get with a loader runs the load
+        without holding the lock on this cache, see loading
 
         touch: this method is thread safe because we wrap sections that access the cacheMap in
-        synchronized block
+        synchronized block. In concurrent mode a live object is touched without locking, as
+        its node.times is safe to update from any thread
 
         update: this method is thread safe because we wrap sections that access the cacheMap in
         synchronized block
@@ -52,9 +116,129 @@ public class Cache<T extends Cacheable> {
     /* the default timeout value is 3600s */
     public static final int DTIMEOUT = 3600;
 
-    private final int capacity;
-    private Map<T, TimePair> cacheMap;
-    private final int timeout;
+    private final long maxWeight;
+    private final Weigher<T> weigher;
+    private final Map<String, Node<T>> cacheMap;
+    private final long timeoutNanos;
+    private final ExpiryScheduler scheduler;
+    private final boolean concurrent;
+    private final ReadBuffer<Node<T>> readBuffer;
+    private final AtomicBoolean draining;
+    private final Consumer<Node<T>> applyRead;
+    private final RemovalListener<T> listener;
+    private final Queue<Removal<T>> removals;
+    private final StatsCounter stats;
+    private final Map<String, CompletableFuture<T>> loading;
+    private final long refreshNanos;
+    private final Executor refresher;
+
+    /* least and most recently accessed nodes of the recency list */
+    private Node<T> head;
+    private Node<T> tail;
+
+    /* the sum of the weights of all objects in the cache */
+    private long totalWeight;
+
+    /**
+     * Create a cache bounded by the total weight of its objects, and a timeout value.
+     * When an object does not fit, the least recently accessed objects are removed until
+     * it does. Objects in the cache that have not been refreshed within the timeout period
+     * are removed from the cache.
+     *
+     * @param maxWeight >=1 the largest total weight of the objects the cache can hold.
+     * @param timeout >=0  the duration in seconds an object should be in the
+     *                cache before it times out.
+     * @param weigher is not null and gives the weight of each object put in the cache
+     * @param scheduler is not null and removes expired objects in the background
+     * @param concurrent if true, cache hits do not lock the whole cache. Reads are
+     *                   buffered and applied to the recency order in batches, so under
+     *                   heavy contention a few reads may not count towards recency.
+     * @param listener is told about every object removed from the cache, or is null
+     * @param refreshWindow >= 0 the duration in seconds before an object expires during which
+     *                      a get with a loader reloads it in the background, or 0 for no
+     *                      refresh ahead. The object already in the cache is returned while
+     *                      it is reloaded.
+     * @param refresher runs the background reloads, may be null if refreshWindow is 0
+     */
+    public Cache(long maxWeight, int timeout, Weigher<T> weigher, ExpiryScheduler scheduler,
+                 boolean concurrent, RemovalListener<T> listener, int refreshWindow,
+                 Executor refresher) {
+
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.totalWeight = 0;
+        this.cacheMap = new ConcurrentHashMap<>();
+        this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeout);
+        this.scheduler = scheduler;
+        this.concurrent = concurrent;
+        this.applyRead = this::applyRead;
+
+        if (concurrent) {
+            this.readBuffer = new ReadBuffer<>();
+            this.draining = new AtomicBoolean();
+        } else {
+            this.readBuffer = null;
+            this.draining = null;
+        }
+
+        this.listener = listener;
+        this.removals = listener == null ? null : new ConcurrentLinkedQueue<>();
+        this.stats = new StatsCounter();
+        this.loading = new ConcurrentHashMap<>();
+        this.refreshNanos = TimeUnit.SECONDS.toNanos(refreshWindow);
+        this.refresher = refresher;
+    }
+
+    /**
+     * Create a cache bounded by the total weight of its objects, and a timeout value.
+     * When an object does not fit, the least recently accessed objects are removed until
+     * it does. Objects in the cache that have not been refreshed within the timeout period
+     * are removed from the cache.
+     *
+     * @param maxWeight >=1 the largest total weight of the objects the cache can hold.
+     * @param timeout >=0  the duration in seconds an object should be in the
+     *                cache before it times out.
+     * @param weigher is not null and gives the weight of each object put in the cache
+     * @param scheduler is not null and removes expired objects in the background
+     * @param concurrent if true, cache hits do not lock the whole cache
+     * @param listener is told about every object removed from the cache, or is null
+     */
+    public Cache(long maxWeight, int timeout, Weigher<T> weigher, ExpiryScheduler scheduler,
+                 boolean concurrent, RemovalListener<T> listener) {
+        this(maxWeight, timeout, weigher, scheduler, concurrent, listener, 0, null);
+    }
+
+    /**
+     * Create a cache bounded by the total weight of its objects, and a timeout value.
+     * When an object does not fit, the least recently accessed objects are removed until
+     * it does. Objects in the cache that have not been refreshed within the timeout period
+     * are removed from the cache.
+     *
+     * @param maxWeight >=1 the largest total weight of the objects the cache can hold.
+     * @param timeout >=0  the duration in seconds an object should be in the
+     *                cache before it times out.
+     * @param weigher is not null and gives the weight of each object put in the cache
+     * @param scheduler is not null and removes expired objects in the background
+     * @param concurrent if true, cache hits do not lock the whole cache
+     */
+    public Cache(long maxWeight, int timeout, Weigher<T> weigher, ExpiryScheduler scheduler,
+                 boolean concurrent) {
+        this(maxWeight, timeout, weigher, scheduler, concurrent, null);
+    }
+
+    /**
+     * Create a cache bounded by the total weight of its objects, and a timeout value,
+     * that expires objects using the scheduler shared by all caches.
+     *
+     * @param maxWeight >=1 the largest total weight of the objects the cache can hold.
+     * @param timeout >=0  the duration in seconds an object should be in the
+     *                cache before it times out.
+     * @param weigher is not null and gives the weight of each object put in the cache
+     * @param concurrent if true, cache hits do not lock the whole cache
+     */
+    public Cache(long maxWeight, int timeout, Weigher<T> weigher, boolean concurrent) {
+        this(maxWeight, timeout, weigher, ExpiryScheduler.shared(), concurrent);
+    }
 
     /**
      * Create a cache with a fixed capacity and a timeout value.
@@ -64,20 +248,51 @@ public class Cache<T extends Cacheable> {
      * @param capacity >=1 the number of objects the cache can hold.
      * @param timeout >=0  the duration in seconds an object should be in the
      *                cache before it times out.
+     * @param scheduler is not null and removes expired objects in the background
+     * @param concurrent if true, cache hits do not lock the whole cache
      */
-    public Cache(int capacity, int timeout) {
-
-        this.capacity = capacity;
-        this.cacheMap = new ConcurrentHashMap<>();
-        this.timeout = timeout;
+    public Cache(int capacity, int timeout, ExpiryScheduler scheduler, boolean concurrent) {
+        this(capacity, timeout, Weigher.singletonWeigher(), scheduler, concurrent);
+    }
 
-        /* starts the auto clear expiry thread */
-        Runnable expiry = new ExpiryThread<>(this.cacheMap);
-        Thread expiryThread = new Thread(expiry);
-        expiryThread.start();
+    /**
+     * Create a cache with a fixed capacity and a timeout value.
+     * Objects in the cache that have not been refreshed within the timeout period
+     * are removed from the cache.
+     *
+     * @param capacity >=1 the number of objects the cache can hold.
+     * @param timeout >=0  the duration in seconds an object should be in the
+     *                cache before it times out.
+     * @param scheduler is not null and removes expired objects in the background
+     */
+    public Cache(int capacity, int timeout, ExpiryScheduler scheduler) {
+        this(capacity, timeout, scheduler, false);
     }
 
+    /**
+     * Create a cache with a fixed capacity and a timeout value that expires objects
+     * using the scheduler shared by all caches.
+     *
+     * @param capacity >=1 the number of objects the cache can hold.
+     * @param timeout >=0  the duration in seconds an object should be in the
+     *                cache before it times out.
+     * @param concurrent if true, cache hits do not lock the whole cache
+     */
+    public Cache(int capacity, int timeout, boolean concurrent) {
+        this(capacity, timeout, ExpiryScheduler.shared(), concurrent);
+    }
 
+    /**
+     * Create a cache with a fixed capacity and a timeout value that expires objects
+     * using the scheduler shared by all caches.
+     *
+     * @param capacity >=1 the number of objects the cache can hold.
+     * @param timeout >=0  the duration in seconds an object should be in the
+     *                cache before it times out.
+     */
+    public Cache(int capacity, int timeout) {
+        this(capacity, timeout, ExpiryScheduler.shared());
+    }
 
     /**
      * Create a cache with default capacity and timeout values.
@@ -88,40 +303,59 @@ public class Cache<T extends Cacheable> {
 
     /**
      * Add a value to the cache.
-     * If the cache is full then remove the least recently accessed object to
+     * If the cache is full then remove the least recently accessed objects to
      * make room for the new object.
      * @param t object to be placed in cache
-     * @return true if t is successfully placed in cache
+     * @return true if t is successfully placed in cache, false if t is already in the
+     * cache or weighs more than the whole cache can hold
      */
     public boolean put(T t) {
+        return put(t, this.timeoutNanos);
+    }
+
+    /**
+     * Add a value to the cache that expires after a given time instead of after the timeout.
+     * @param t object to be placed in cache
+     * @param lifetimeNanos >= 0 and <= timeoutNanos, the time in nanoseconds t stays in the
+     *                      cache if it is not refreshed
+     * @return true if t is successfully placed in cache, false if t is already in the
+     * cache or weighs more than the whole cache can hold
+     */
+    private boolean put(T t, long lifetimeNanos) {
+
+        int weight = this.weigher.weigh(t);
+        if (weight > this.maxWeight) {
+            return false;
+        }
 
         synchronized (this) {
-            if (this.cacheMap.size() < this.capacity && !this.cacheMap.containsKey(t)) {
-                TimePair add = new TimePair(LocalDateTime.now(),
-                        LocalDateTime.now().plusSeconds(this.timeout));
-                this.cacheMap.put(t, add);
-                return true;
-            }
-            if (this.cacheMap.size() == this.capacity && !this.cacheMap.containsKey(t)) {
-                LocalDateTime time = LocalDateTime.now();
-                LocalDateTime furthestAccessTime = LocalDateTime.now();
-                T removeObject = t;
+            drainReadBuffer();
 
-                for (T key : this.cacheMap.keySet()) {
-                    if (this.cacheMap.get(key).getLastAccess().isBefore(furthestAccessTime)) {
-                        removeObject = key;
-                        furthestAccessTime = this.cacheMap.get(key).getLastAccess();
-                    }
+            /* an object with the same id replaces the one already in the cache */
+            Node<T> sameId = this.cacheMap.get(t.id());
+            if (sameId != null) {
+                if (sameId.object == t) {
+                    return false;
                 }
+                remove(sameId, RemovalCause.REPLACED);
+            }
 
-                this.cacheMap.remove(removeObject);
-                this.cacheMap.put(t, new TimePair(time,
-                        LocalDateTime.now().plusSeconds(this.timeout)));
-                return true;
+            /* the head of the recency list is the least recently accessed object */
+            while (this.totalWeight + weight > this.maxWeight) {
+                remove(this.head, RemovalCause.EVICTED);
             }
+
+            long time = System.nanoTime();
+            Node<T> node = new Node<>(t, weight, new TimePair(time, time + lifetimeNanos));
+            this.cacheMap.put(t.id(), node);
+            this.totalWeight += weight;
+            linkLast(node);
+            this.scheduler.schedule(new NodeExpiry<>(this, node, lifetimeNanos));
         }
 
-        return false;
+        this.stats.recordPut();
+        notifyRemovals();
+        return true;
     }
 
     /**
@@ -131,17 +365,118 @@ public class Cache<T extends Cacheable> {
      */
     public T get(String id) throws NotFoundException {
 
-        synchronized (this) {
-            for (T object : this.cacheMap.keySet()) {
-                if (object.id().equals(id)) {
-                    LocalDateTime expiry = this.cacheMap.get(object).getExpiryTime();
-                    this.cacheMap.replace(object, new TimePair(LocalDateTime.now(), expiry));
-                    return object;
-                }
+        Node<T> node = lookup(id);
+        if (node == null) {
+            this.stats.recordMiss();
+            throw new NotFoundException();
+        }
+
+        this.stats.recordHit();
+        return node.object;
+    }
+
+    /**
+     * Retrieve an object from the cache, loading it and putting it in the cache if it is
+     * not there. Concurrent calls that miss on the same id share one load: the first caller
+     * runs loader and the others wait for its result, so a page many clients ask for at once
+     * is only fetched once.
+     * If the cache has a refresh window and the object expires within it, the object is
+     * returned at once and reloaded in the background, so objects that keep being read are
+     * replaced before they expire instead of missing.
+     * @param id the identifier of the object to be retrieved
+     * @param loader is not null and loads the object if it is not in the cache
+     * @return the object that matches the identifier, from the cache or from loader
+     * @throws NotFoundException if the object is not in the cache and loader can't find it
+     */
+    public T get(String id, CacheLoader<T> loader) throws NotFoundException {
+
+        Node<T> node = lookup(id);
+        if (node != null) {
+            this.stats.recordHit();
+            if (this.refreshNanos > 0
+                    && node.times.getExpiryTime() - System.nanoTime() < this.refreshNanos) {
+                refresh(id, node.object, loader);
             }
+            return node.object;
+        }
+        this.stats.recordMiss();
+
+        CompletableFuture<T> load = new CompletableFuture<>();
+        CompletableFuture<T> inFlight = this.loading.putIfAbsent(id, load);
+        if (inFlight != null) {
+            return join(inFlight);
+        }
+
+        /* a load that finished between the miss and putIfAbsent has already put the object */
+        node = lookup(id);
+        if (node != null) {
+            load.complete(node.object);
+            this.loading.remove(id, load);
+            return node.object;
+        }
+
+        return load(id, null, loader, load);
+    }
+
+    /**
+     * Reloads an object in the background with loader.reload, unless it is already being
+     * loaded.
+     * @param id the identifier of the object to reload
+     * @param old is not null and is the object with identifier id in the cache
+     * @param loader is not null and loads the object
+     */
+    private void refresh(final String id, final T old, final CacheLoader<T> loader) {
+        final CompletableFuture<T> load = new CompletableFuture<>();
+        if (this.loading.putIfAbsent(id, load) != null) {
+            return;
         }
 
-        throw new NotFoundException();
+        try {
+            this.refresher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        load(id, old, loader, load);
+                    } catch (NotFoundException | RuntimeException e) {
+                        // the object already in the cache is kept until it expires
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            load.completeExceptionally(e);
+            this.loading.remove(id, load);
+        }
+    }
+
+    /**
+     * Runs loader, puts the loaded object in the cache for the lifetime loader gives it and
+     * completes load with it.
+     * @param id the identifier of the object to load
+     * @param old the object with identifier id that is being refreshed, or null if id missed
+     * @param loader is not null and loads the object
+     * @param load is not null and is the value of id in loading
+     * @return the loaded object
+     * @throws NotFoundException if loader can't find the object
+     */
+    private T load(String id, T old, CacheLoader<T> loader, CompletableFuture<T> load)
+            throws NotFoundException {
+        try {
+            long loadStart = System.nanoTime();
+            T t = old == null ? loader.load(id) : loader.reload(id, old);
+            this.stats.recordLoad(System.nanoTime() - loadStart);
+            if (t == null) {
+                throw new NotFoundException();
+            }
+            long lifetimeNanos = loader.lifetimeNanos(id, this.timeoutNanos);
+            put(t, Math.max(0, Math.min(lifetimeNanos, this.timeoutNanos)));
+            load.complete(t);
+            return t;
+        } catch (NotFoundException | RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.loading.remove(id, load);
+        }
     }
 
     /**
@@ -154,18 +489,29 @@ public class Cache<T extends Cacheable> {
      */
     public boolean touch(String id) {
 
+        if (this.concurrent) {
+            Node<T> node = this.cacheMap.get(id);
+            if (node == null) {
+                return false;
+            }
+
+            long now = System.nanoTime();
+            if (!node.times.isExpired(now)) {
+                node.times.setExpiryTime(now + this.timeoutNanos);
+                return true;
+            }
+        }
+
         synchronized (this) {
-            for (T object : this.cacheMap.keySet()) {
-                if (object.id().equals(id)) {
-                    LocalDateTime update = this.cacheMap.get(object).getLastAccess();
-                    TimePair replacePair = new TimePair(update,
-                            LocalDateTime.now().plusSeconds(this.timeout));
-                    this.cacheMap.replace(object, replacePair);
-                    return true;
-                }
+            Node<T> node = this.cacheMap.get(id);
+            long now = System.nanoTime();
+            if (node != null && !removeIfExpired(node, now)) {
+                node.times.setExpiryTime(now + this.timeoutNanos);
+                return true;
             }
         }
 
+        notifyRemovals();
         return false;
     }
 
@@ -180,16 +526,334 @@ public class Cache<T extends Cacheable> {
     public boolean update(T t) {
 
         synchronized (this) {
-            if (this.cacheMap.containsKey(t)) {
-                LocalDateTime update = this.cacheMap.get(t).getLastAccess();
-                TimePair replacePair = new TimePair(update,
-                        LocalDateTime.now().plusSeconds(this.timeout));
-                this.cacheMap.replace(t, replacePair);
+            Node<T> node = this.cacheMap.get(t.id());
+            long now = System.nanoTime();
+            if (node != null && node.object == t && !removeIfExpired(node, now)) {
+                node.times.setExpiryTime(now + this.timeoutNanos);
                 return true;
             }
         }
 
+        notifyRemovals();
         return false;
     }
 
+    /**
+     * Finds a live object in the cache and marks it as accessed, without counting the access
+     * in the statistics of the cache.
+     * @param id the identifier of the object to be retrieved
+     * @return the node of the object that matches the identifier, or null if it is not in
+     * the cache
+     */
+    private Node<T> lookup(String id) {
+
+        if (this.concurrent) {
+            Node<T> node = this.cacheMap.get(id);
+            if (node == null) {
+                return null;
+            }
+
+            long now = System.nanoTime();
+            if (!node.times.isExpired(now)) {
+                node.times.setLastAccess(now);
+                if (this.readBuffer.record(node)) {
+                    tryDrainReadBuffer();
+                }
+                return node;
+            }
+        }
+
+        synchronized (this) {
+            Node<T> node = this.cacheMap.get(id);
+            long now = System.nanoTime();
+            if (node != null && !removeIfExpired(node, now)) {
+                node.times.setLastAccess(now);
+                moveToLast(node);
+                return node;
+            }
+        }
+
+        notifyRemovals();
+        return null;
+    }
+
+    /**
+     * Waits for a load started by another thread.
+     * @param load is not null and is the load of an object
+     * @return the loaded object
+     * @throws NotFoundException if the load could not find the object, this is the exception
+     * the loader threw, so that every thread waiting for the load sees what it carries
+     */
+    private static <T> T join(CompletableFuture<T> load) throws NotFoundException {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof NotFoundException) {
+                throw (NotFoundException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    /**
+     * Removes the least recently accessed objects until an object of a given weight fits, for
+     * callers that can only create the object once the resources of those objects are freed.
+     * An object with the same id still counts, since it is only replaced once the new object
+     * has been created.
+     * @param weight >= 0 and <= the maximum weight of the cache
+     */
+    void makeRoom(long weight) {
+
+        synchronized (this) {
+            drainReadBuffer();
+            while (this.totalWeight + weight > this.maxWeight) {
+                remove(this.head, RemovalCause.EVICTED);
+            }
+        }
+
+        notifyRemovals();
+    }
+
+    /**
+     * Records the time taken to load an object that was not found in the cache, for callers
+     * that load missing objects themselves.
+     * @param loadNanos >= 0 the time the load took, in nanoseconds
+     */
+    public void recordLoad(long loadNanos) {
+        this.stats.recordLoad(loadNanos);
+    }
+
+    /**
+     * Returns a snapshot of the counts of this cache since it was created. Counting takes no
+     * lock, so a snapshot taken while the cache is in use may be slightly out of step between
+     * counts.
+     * @return the hits, misses, puts, removals by cause and loads of this cache
+     */
+    public CacheStats stats() {
+        return this.stats.snapshot();
+    }
+
+    /**
+     * Runs the expiry task of a node. The node is removed if it has expired, otherwise
+     * it has been touched since the task was scheduled and the task is queued again for
+     * the new expiry time.
+     *
+     * @param task is not null and is the expiry task of node
+     * @param node is not null
+     */
+    private void expire(NodeExpiry<T> task, Node<T> node) {
+
+        synchronized (this) {
+            if (this.cacheMap.get(node.object.id()) != node) {
+                return;
+            }
+
+            long now = System.nanoTime();
+            if (!removeIfExpired(node, now)) {
+                task.setDelay(node.times.getExpiryTime() - now);
+                this.scheduler.schedule(task);
+            }
+        }
+
+        notifyRemovals();
+    }
+
+    /**
+     * Passes the objects removed from the cache to listener, oldest removal first.
+     * Must be called while not holding the lock on this cache.
+     */
+    private void notifyRemovals() {
+        if (this.removals == null) {
+            return;
+        }
+
+        Removal<T> removal = this.removals.poll();
+        while (removal != null) {
+            this.listener.onRemoval(removal.object, removal.cause);
+            removal = this.removals.poll();
+        }
+    }
+
+    /**
+     * Drains readBuffer if no other thread is already doing so.
+     */
+    private void tryDrainReadBuffer() {
+        if (this.draining.compareAndSet(false, true)) {
+            try {
+                synchronized (this) {
+                    drainReadBuffer();
+                }
+            } finally {
+                this.draining.set(false);
+            }
+        }
+    }
+
+    /**
+     * Applies the buffered reads of a concurrent cache to the recency list.
+     * Must be called while holding the lock on this cache.
+     */
+    private void drainReadBuffer() {
+        if (this.concurrent) {
+            this.readBuffer.drain(this.applyRead);
+        }
+    }
+
+    /**
+     * Moves a node that was read to the end of the recency list, unless it has been
+     * removed from the cache since it was read.
+     * Must be called while holding the lock on this cache.
+     *
+     * @param node is not null
+     */
+    private void applyRead(Node<T> node) {
+        if (this.cacheMap.get(node.object.id()) == node) {
+            moveToLast(node);
+        }
+    }
+
+    /**
+     * Removes a node from the cache if it has passed its expiry time.
+     * Must be called while holding the lock on this cache.
+     *
+     * @param node is not null and is in the recency list
+     * @param now the current System.nanoTime()
+     * @return true if the node has expired and was removed
+     */
+    private boolean removeIfExpired(Node<T> node, long now) {
+        if (node.times.isExpired(now)) {
+            remove(node, RemovalCause.EXPIRED);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes a node and its object from the cache, queueing the removal for listener.
+     * Must be called while holding the lock on this cache.
+     *
+     * @param node is not null and is in the recency list
+     * @param cause is not null and is the reason the node is removed
+     */
+    private void remove(Node<T> node, RemovalCause cause) {
+        this.cacheMap.remove(node.object.id());
+        this.totalWeight -= node.weight;
+        unlink(node);
+        this.stats.recordRemoval(cause);
+
+        if (this.removals != null) {
+            this.removals.add(new Removal<>(node.object, cause));
+        }
+    }
+
+    /**
+     * Adds a node to the most recently accessed end of the recency list.
+     * Must be called while holding the lock on this cache.
+     *
+     * @param node is not null and is not in the recency list
+     */
+    private void linkLast(Node<T> node) {
+        node.prev = this.tail;
+        node.next = null;
+        if (this.tail == null) {
+            this.head = node;
+        } else {
+            this.tail.next = node;
+        }
+        this.tail = node;
+    }
+
+    /**
+     * Takes a node out of the recency list.
+     * Must be called while holding the lock on this cache.
+     *
+     * @param node is not null and is in the recency list
+     */
+    private void unlink(Node<T> node) {
+        if (node.prev == null) {
+            this.head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            this.tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+    }
+
+    /**
+     * Marks a node as the most recently accessed one.
+     * Must be called while holding the lock on this cache.
+     *
+     * @param node is not null and is in the recency list
+     */
+    private void moveToLast(Node<T> node) {
+        if (node != this.tail) {
+            unlink(node);
+            linkLast(node);
+        }
+    }
+
+    /**
+     * An entry of the cache, holding a cached object, its times and its neighbours in
+     * the recency list.
+     */
+    private static class Node<T> {
+        private final T object;
+        private final int weight;
+        private final TimePair times;
+        private Node<T> prev;
+        private Node<T> next;
+
+        private Node(T object, int weight, TimePair times) {
+            this.object = object;
+            this.weight = weight;
+            this.times = times;
+        }
+    }
+
+    /**
+     * An object that has been removed from the cache and the reason it was removed.
+     */
+    private static class Removal<T> {
+        private final T object;
+        private final RemovalCause cause;
+
+        private Removal(T object, RemovalCause cause) {
+            this.object = object;
+            this.cause = cause;
+        }
+    }
+
+    /**
+     * The expiry task of a node. Both the cache and the node are only weakly reachable
+     * from the task, so evicted objects and unused caches are not kept alive while the
+     * task waits in the scheduler.
+     */
+    private static class NodeExpiry<T extends Cacheable> extends ExpiryTask {
+        private final WeakReference<Cache<T>> cache;
+        private final WeakReference<Node<T>> node;
+
+        private NodeExpiry(Cache<T> cache, Node<T> node, long delayNanos) {
+            super(delayNanos);
+            this.cache = new WeakReference<>(cache);
+            this.node = new WeakReference<>(node);
+        }
+
+        @Override
+        public void run() {
+            Cache<T> owner = this.cache.get();
+            Node<T> expiring = this.node.get();
+            if (owner != null && expiring != null) {
+                owner.expire(this, expiring);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,42 @@
+package cpen221.mp3.cache;
+
+public interface CacheLoader<T extends Cacheable> {
+
+    /**
+     * Loads an object that was not found in a cache, for example from a slower store.
+     * While one thread is loading an id, other threads asking the cache for the same id wait
+     * for this load instead of starting their own.
+     * @param id is not null and is the identifier of the object to load
+     * @return the object with identifier id, not null
+     * @throws NotFoundException if there is no object with identifier id
+     */
+    T load(String id) throws NotFoundException;
+
+    /**
+     * Loads a newer copy of an object that is about to expire from a cache. By default this
+     * is the same as load, loaders that read from a store that can itself be out of date
+     * should skip it here.
+     * @param id is not null and is the identifier of the object to reload
+     * @param old is not null and is the object with identifier id that is in the cache
+     * @return the object with identifier id, not null
+     * @throws NotFoundException if there is no object with identifier id
+     */
+    default T reload(String id, T old) throws NotFoundException {
+        return load(id);
+    }
+
+    /**
+     * Gives the time an object this loader just loaded or reloaded may stay in a cache. By
+     * default this is the timeout of the cache, loaders that read from a store that expires
+     * its own copies should give the time left on the copy they read, so that the object
+     * does not outlive it.
+     * @param id is not null and is the identifier of the object just loaded
+     * @param timeoutNanos >= 0 is the timeout of the cache, in nanoseconds
+     * @return the time in nanoseconds the object may stay in the cache, the cache keeps it
+     * for at most timeoutNanos
+     */
+    default long lifetimeNanos(String id, long timeoutNanos) {
+        return timeoutNanos;
+    }
+
+}
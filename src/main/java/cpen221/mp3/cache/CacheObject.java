@@ -1,6 +1,21 @@
 package cpen221.mp3.cache;
 
-public class CacheObject implements Cacheable {
+public class CacheObject implements TextCacheable {
+
+    /* the number of bytes an object takes up in a cache besides its id and text, an estimate
+       of the object, string and cache node headers, so that no object weighs nothing */
+    static final int ENTRY_BYTES = 64;
+
+    /* weighs a CacheObject by the number of bytes its id and text take up as UTF-16, plus
+       ENTRY_BYTES */
+    public static final Weigher<CacheObject> TEXT_WEIGHER = new Weigher<CacheObject>() {
+        @Override
+        public int weigh(CacheObject co) {
+            int textLength = co.getText() == null ? 0 : co.getText().length();
+            return 2 * (co.id().length() + textLength) + ENTRY_BYTES;
+        }
+    };
+
     private String id;
     private String text;
 
@@ -0,0 +1,143 @@
+package cpen221.mp3.cache;
+
+public class CacheStats {
+
+    /*
+    RI: every count is >= 0
+     */
+
+    /*
+    AF(cs) = the counts a cache had reached when the snapshot was taken, where
+        hitCount and missCount are the gets that found and did not find their object,
+        putCount is the objects put in the cache,
+        evictionCount, expirationCount and replacementCount are the objects removed because
+            the cache was full, because they expired and because another object with the same
+            id was put in the cache,
+        loadCount is the objects loaded after a miss, which took totalLoadTime nanoseconds
+     */
+
+    /*
+    Thread Safety Arguments:
+        every field is final and immutable, thus CacheStats is thread safe
+     */
+
+    private final long hitCount;
+    private final long missCount;
+    private final long putCount;
+    private final long evictionCount;
+    private final long expirationCount;
+    private final long replacementCount;
+    private final long loadCount;
+    private final long totalLoadTime;
+
+    /**
+     * Creates an immutable snapshot of the counts of a cache.
+     * @param hitCount >= 0 the number of gets that found their object
+     * @param missCount >= 0 the number of gets that did not find their object
+     * @param putCount >= 0 the number of objects put in the cache
+     * @param evictionCount >= 0 the number of objects removed to make room for others
+     * @param expirationCount >= 0 the number of objects removed because they expired
+     * @param replacementCount >= 0 the number of objects replaced by an object with the same id
+     * @param loadCount >= 0 the number of objects loaded after a miss
+     * @param totalLoadTime >= 0 the time spent loading, in nanoseconds
+     */
+    public CacheStats(long hitCount, long missCount, long putCount, long evictionCount,
+                      long expirationCount, long replacementCount, long loadCount,
+                      long totalLoadTime) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.replacementCount = replacementCount;
+        this.loadCount = loadCount;
+        this.totalLoadTime = totalLoadTime;
+    }
+
+    /**
+     * @return the number of gets that found their object
+     */
+    public long hitCount() {
+        return this.hitCount;
+    }
+
+    /**
+     * @return the number of gets that did not find their object
+     */
+    public long missCount() {
+        return this.missCount;
+    }
+
+    /**
+     * @return the number of gets
+     */
+    public long requestCount() {
+        return this.hitCount + this.missCount;
+    }
+
+    /**
+     * @return the fraction of gets that found their object, or 1 if there have been no gets
+     */
+    public double hitRate() {
+        long requests = requestCount();
+        return requests == 0 ? 1.0 : (double) this.hitCount / requests;
+    }
+
+    /**
+     * @return the number of objects put in the cache
+     */
+    public long putCount() {
+        return this.putCount;
+    }
+
+    /**
+     * @return the number of objects removed to make room for other objects
+     */
+    public long evictionCount() {
+        return this.evictionCount;
+    }
+
+    /**
+     * @return the number of objects removed because they expired
+     */
+    public long expirationCount() {
+        return this.expirationCount;
+    }
+
+    /**
+     * @return the number of objects replaced by another object with the same id
+     */
+    public long replacementCount() {
+        return this.replacementCount;
+    }
+
+    /**
+     * @return the number of objects loaded after a miss
+     */
+    public long loadCount() {
+        return this.loadCount;
+    }
+
+    /**
+     * @return the total time spent loading objects after a miss, in nanoseconds
+     */
+    public long totalLoadTime() {
+        return this.totalLoadTime;
+    }
+
+    /**
+     * @return the average time a load took, in nanoseconds, or 0 if there have been no loads
+     */
+    public double averageLoadPenalty() {
+        return this.loadCount == 0 ? 0.0 : (double) this.totalLoadTime / this.loadCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hitCount=" + this.hitCount + ", missCount=" + this.missCount
+                + ", putCount=" + this.putCount + ", evictionCount=" + this.evictionCount
+                + ", expirationCount=" + this.expirationCount
+                + ", replacementCount=" + this.replacementCount
+                + ", loadCount=" + this.loadCount + ", totalLoadTime=" + this.totalLoadTime + "}";
+    }
+}
@@ -0,0 +1,114 @@
+package cpen221.mp3.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class CompressedCacheObject implements TextCacheable {
+
+    /* weighs a CompressedCacheObject by the number of bytes its id, as UTF-16, and its
+       compressed text take up, plus the same per object bytes as CacheObject.TEXT_WEIGHER */
+    public static final Weigher<CompressedCacheObject> SIZE_WEIGHER =
+            new Weigher<CompressedCacheObject>() {
+                @Override
+                public int weigh(CompressedCacheObject co) {
+                    int textBytes = co.compressed == null ? 0 : co.compressed.length;
+                    return 2 * co.id.length() + textBytes + CacheObject.ENTRY_BYTES;
+                }
+            };
+
+    private final String id;
+    private final byte[] compressed;
+    private final int length;
+
+    /*
+    RI: id is not null.
+        compressed is null if and only if the text is null, otherwise compressed is the
+        Deflate compression of the UTF-8 encoding of the text, and length is the number
+        of bytes in that encoding.
+     */
+
+    /*
+    AF(o) = a cacheable object such that
+    o.id() = id of object
+    o.getText() = the text that inflating compressed gives back
+     */
+
+    /**
+     * Creates an immutable cacheable object that stores its text compressed.
+     * Compressing takes time on creation and every getText() decompresses again, in exchange
+     * page text takes up several times less memory.
+     * @param id of object
+     * @param text stored in object
+     */
+    public CompressedCacheObject(String id, String text) {
+        this.id = id;
+
+        if (text == null) {
+            this.compressed = null;
+            this.length = 0;
+        } else {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            this.compressed = deflate(bytes);
+            this.length = bytes.length;
+        }
+    }
+
+    /**
+     * gets id of CompressedCacheObject
+     * @return id of CompressedCacheObject
+     */
+    public String id() {
+        return this.id;
+    }
+
+    /**
+     * gets text stored in cacheable object, decompressing it
+     * @return text
+     */
+    public String getText() {
+        if (this.compressed == null) {
+            return null;
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(this.compressed);
+            byte[] bytes = new byte[this.length];
+            int read = 0;
+            while (read < this.length && !inflater.finished()) {
+                read += inflater.inflate(bytes, read, this.length - read);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            // compressed was made by deflate, so it is always valid
+            throw new IllegalStateException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Compresses bytes with Deflate, favouring speed over compression ratio.
+     * @param bytes is not null
+     * @return the compressed bytes
+     */
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 16);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int written = deflater.deflate(buffer);
+                out.write(buffer, 0, written);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package cpen221.mp3.cache;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class DiskCache {
+
+    /*
+    RI: file, channel and index are not null.
+        every entry in index is the offset and length of a complete record in the file, and
+            the id in that record is the key of the entry.
+        index is ordered by expiresAt, oldest first.
+        liveBytes is the sum of the lengths of the entries in index and is <= maxBytes.
+        compactAt >= 2 * maxBytes.
+     */
+
+    /*
+    AF(dc) = a cache of page text kept in an append-only file, such that
+        the text of page id is in the record at index.get(id).offset, until
+        index.get(id).expiresAt. Records that are not in index are garbage and are dropped
+        the next time the file is compacted, which is once the file is longer than
+        compactAt bytes.
+
+        A record is the expiry time in milliseconds since the epoch (a long), the number of
+        bytes in the id (an int), the number of bytes in the text or -1 if there is no text
+        (an int), then the UTF-8 bytes of the id and of the text.
+     */
+
+    /*
+    Thread Safety Arguments:
+        every method that reads or changes index, liveBytes or channel is synchronized, so
+        only one thread uses the file at a time.
+
+        open is static synchronized, so every DiskCache in the JVM has a different file and no
+        two of them append to or compact the same file.
+     */
+
+    /* the number of bytes in a record before the id */
+    private static final int HEADER_BYTES = 16;
+
+    /* the disk caches that are open, by the canonical path of their file */
+    private static final Map<String, DiskCache> OPEN = new HashMap<>();
+
+    private final File file;
+    private final long maxBytes;
+    private final long timeoutMillis;
+    private final LinkedHashMap<String, Entry> index;
+    private FileChannel channel;
+    private long liveBytes;
+    private long compactAt;
+
+    /**
+     * Opens the file of a disk cache, reading back the pages it held before, or creates the
+     * file if it does not exist.
+     * @param file is not null and is the file that holds the pages
+     * @param maxBytes the number of bytes of records the cache may hold, is > 0.
+     *                 The file itself may grow to twice this size before it is compacted.
+     * @param timeout the duration, in seconds, a page stays in the cache after it is added.
+     *                Expiry times are wall clock times so that they still hold after a restart.
+     * @throws IOException if the file can not be read or created
+     */
+    private DiskCache(File file, long maxBytes, int timeout) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.timeoutMillis = timeout * 1000L;
+        this.index = new LinkedHashMap<>();
+        this.liveBytes = 0;
+        this.compactAt = 2 * maxBytes;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        load();
+        trim(System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the disk cache that uses a file, opening it if no disk cache in this JVM uses
+     * the file yet. If the file is already open the existing cache is returned, with the
+     * bounds it was opened with.
+     * @param file is not null and is the file that holds the pages
+     * @param maxBytes the number of bytes of records the cache may hold, is > 0
+     * @param timeout the duration, in seconds, a page stays in the cache after it is added
+     * @return the disk cache for file
+     * @throws IOException if the file can not be read or created
+     */
+    public static synchronized DiskCache open(File file, long maxBytes, int timeout)
+            throws IOException {
+        String path = file.getCanonicalPath();
+        DiskCache diskCache = OPEN.get(path);
+
+        if (diskCache == null) {
+            diskCache = new DiskCache(file, maxBytes, timeout);
+            OPEN.put(path, diskCache);
+        }
+
+        return diskCache;
+    }
+
+    /**
+     * Add a page to the cache, unless the cache already holds an unexpired copy of it.
+     * The oldest pages are dropped if the cache is over its size bound.
+     * @param t is not null and is the page to add
+     * @return true if the page was written to the file, false otherwise
+     */
+    public synchronized boolean put(TextCacheable t) {
+        long now = System.currentTimeMillis();
+        trim(now);
+        if (this.index.containsKey(t.id())) {
+            return false;
+        }
+
+        ByteBuffer record = encode(t.id(), t.getText(), now + this.timeoutMillis);
+        if (record.remaining() > this.maxBytes) {
+            return false;
+        }
+
+        long fileBytes;
+        try {
+            long offset = this.channel.size();
+            while (record.hasRemaining()) {
+                this.channel.write(record, offset + record.position());
+            }
+            add(t.id(), new Entry(offset, record.limit(), now + this.timeoutMillis));
+            trim(now);
+            fileBytes = offset + record.limit();
+        } catch (IOException e) {
+            System.out.println("Could not write to file");
+            return false;
+        }
+
+        /* the page is stored whether or not the garbage around it can be dropped now. After a
+           compaction fails, the file has to grow by another maxBytes before it is tried again,
+           so that every put does not copy the whole file */
+        if (fileBytes > this.compactAt) {
+            try {
+                compact();
+                this.compactAt = 2 * this.maxBytes;
+            } catch (IOException e) {
+                System.out.println("Could not compact file");
+                this.compactAt = fileBytes + this.maxBytes;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Add a page to the cache, replacing the copy it holds, if any, even if that copy has
+     * not expired yet.
+     * @param t is not null and is the page to add
+     * @return true if the page was written to the file, false otherwise. The old copy is
+     * dropped either way.
+     */
+    public synchronized boolean replace(TextCacheable t) {
+        remove(t.id());
+        return put(t);
+    }
+
+    /**
+     * Retrieve a page from the cache.
+     * @param id the identifier of the page to be retrieved
+     * @return a new object holding the id and text of the page and the time it expires, so
+     * that a copy kept elsewhere does not outlive it
+     * @throws NotFoundException if the page is not in the cache, has expired or can not be
+     * read from the file
+     */
+    public synchronized ExpiringCacheObject get(String id) throws NotFoundException {
+        trim(System.currentTimeMillis());
+        Entry entry = this.index.get(id);
+        if (entry == null) {
+            throw new NotFoundException();
+        }
+
+        try {
+            ByteBuffer record = ByteBuffer.allocate(entry.length);
+            while (record.hasRemaining()) {
+                if (this.channel.read(record, entry.offset + record.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            record.flip();
+
+            record.getLong();
+            int idLength = record.getInt();
+            int textLength = record.getInt();
+            record.position(HEADER_BYTES + idLength);
+            if (textLength < 0) {
+                return new ExpiringCacheObject(id, null, entry.expiresAt);
+            }
+            byte[] text = new byte[textLength];
+            record.get(text);
+            return new ExpiringCacheObject(id, new String(text, StandardCharsets.UTF_8),
+                    entry.expiresAt);
+        } catch (IOException e) {
+            remove(id);
+            throw new NotFoundException();
+        }
+    }
+
+    /**
+     * @return the number of pages in the cache, including pages that have expired but have
+     * not been dropped yet
+     */
+    public synchronized int size() {
+        return this.index.size();
+    }
+
+    /**
+     * Closes the file of the cache. The pages stay in the file and are read back the next
+     * time it is opened.
+     */
+    public void close() {
+        synchronized (DiskCache.class) {
+            synchronized (this) {
+                try {
+                    OPEN.remove(this.file.getCanonicalPath());
+                    this.channel.close();
+                } catch (IOException e) {
+                    System.out.println("Could not close file");
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds index from the records in the file. A record cut short by a crash while it
+     * was being written is removed from the end of the file.
+     * @throws IOException if the file can not be read
+     */
+    private void load() throws IOException {
+        long offset = 0;
+        long now = System.currentTimeMillis();
+
+        try (InputStream in = Files.newInputStream(this.file.toPath());
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+            while (true) {
+                long expiresAt = data.readLong();
+                int idLength = data.readInt();
+                int textLength = data.readInt();
+                if (idLength < 0 || textLength < -1 || (long) HEADER_BYTES + idLength
+                        + Math.max(textLength, 0) > this.channel.size() - offset) {
+                    break;
+                }
+
+                byte[] id = new byte[idLength];
+                data.readFully(id);
+                long skipped = 0;
+                int skip = Math.max(textLength, 0);
+                while (skipped < skip) {
+                    long n = data.skip(skip - skipped);
+                    if (n <= 0) {
+                        throw new EOFException();
+                    }
+                    skipped += n;
+                }
+
+                int length = HEADER_BYTES + idLength + skip;
+                String pageId = new String(id, StandardCharsets.UTF_8);
+                remove(pageId);
+                if (expiresAt - now > 0) {
+                    add(pageId, new Entry(offset, length, expiresAt));
+                }
+                offset += length;
+            }
+        } catch (EOFException e) {
+            // reached the end of the file, possibly in the middle of a record
+        }
+
+        if (offset < this.channel.size()) {
+            this.channel.truncate(offset);
+        }
+    }
+
+    /**
+     * Rewrites the file so that it only holds the records in index.
+     * @throws IOException if the file can not be written
+     */
+    private void compact() throws IOException {
+        File compacted = new File(this.file.getPath() + ".tmp");
+        LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+        try (FileChannel out = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (Map.Entry<String, Entry> e : this.index.entrySet()) {
+                Entry entry = e.getValue();
+                long copied = 0;
+                while (copied < entry.length) {
+                    copied += this.channel.transferTo(entry.offset + copied,
+                            entry.length - copied, out);
+                }
+                entries.put(e.getKey(), new Entry(position, entry.length, entry.expiresAt));
+                position += entry.length;
+            }
+        }
+
+        Files.move(compacted.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        this.channel.close();
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.index.clear();
+        this.index.putAll(entries);
+    }
+
+    /**
+     * Drops expired pages, then drops the oldest pages until the cache is within its size
+     * bound. Since every page lives for the same time, the oldest pages expire first.
+     * @param now the current time in milliseconds since the epoch
+     */
+    private void trim(long now) {
+        Iterator<Map.Entry<String, Entry>> oldest = this.index.entrySet().iterator();
+        while (oldest.hasNext()) {
+            Entry entry = oldest.next().getValue();
+            if (entry.expiresAt - now > 0 && this.liveBytes <= this.maxBytes) {
+                break;
+            }
+            oldest.remove();
+            this.liveBytes -= entry.length;
+        }
+    }
+
+    /**
+     * Adds an entry as the newest entry in index.
+     * @param id is not null and not in index
+     * @param entry is not null
+     */
+    private void add(String id, Entry entry) {
+        this.index.put(id, entry);
+        this.liveBytes += entry.length;
+    }
+
+    /**
+     * Removes an entry from index if it is there.
+     * @param id is not null
+     */
+    private void remove(String id) {
+        Entry entry = this.index.remove(id);
+        if (entry != null) {
+            this.liveBytes -= entry.length;
+        }
+    }
+
+    /**
+     * Encodes a page as a record.
+     * @param id is not null
+     * @param text may be null
+     * @param expiresAt the expiry time of the page in milliseconds since the epoch
+     * @return a buffer holding the record, ready to be written
+     */
+    private static ByteBuffer encode(String id, String text, long expiresAt) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        byte[] textBytes = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + idBytes.length + textBytes.length);
+        record.putLong(expiresAt);
+        record.putInt(idBytes.length);
+        record.putInt(text == null ? -1 : textBytes.length);
+        record.put(idBytes);
+        record.put(textBytes);
+        record.flip();
+        return record;
+    }
+
+    private static class Entry {
+
+        /*
+        RI: offset >= 0 and length >= HEADER_BYTES
+         */
+
+        /*
+        AF(e) = the record of a page, length bytes long starting at byte offset of the file,
+            which expires at expiresAt milliseconds since the epoch
+         */
+
+        final long offset;
+        final int length;
+        final long expiresAt;
+
+        Entry(long offset, int length, long expiresAt) {
+            this.offset = offset;
+            this.length = length;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package cpen221.mp3.cache;
+
+import java.util.concurrent.TimeUnit;
+
+public class ExpiringCacheObject extends CacheObject {
+
+    private final long expiresAt;
+
+    /*
+    RI: id is not null.
+     */
+
+    /*
+    AF(o) = a cacheable object read from a store that keeps it until a fixed time, such that
+    o.id() = id of object
+    o.text() = text of object
+    o.expiresAt() = the time the store drops the object, in milliseconds since the epoch
+     */
+
+    /**
+     * Creates an immutable cacheable object with an expiry time
+     * @param id of object
+     * @param text stored in object
+     * @param expiresAt the time the object expires, in milliseconds since the epoch
+     */
+    public ExpiringCacheObject(String id, String text, long expiresAt) {
+        super(id, text);
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * gets the expiry time of the object
+     * @return the time the object expires, in milliseconds since the epoch
+     */
+    public long expiresAt() {
+        return this.expiresAt;
+    }
+
+    /**
+     * gets the time left before the object expires
+     * @param timeoutNanos >= 0 the most time that may be returned, in nanoseconds
+     * @return the time in nanoseconds until the object expires, between 0 and timeoutNanos
+     */
+    public long lifetimeNanos(long timeoutNanos) {
+        long left = this.expiresAt - System.currentTimeMillis();
+        return Math.max(0, Math.min(TimeUnit.MILLISECONDS.toNanos(left), timeoutNanos));
+    }
+}
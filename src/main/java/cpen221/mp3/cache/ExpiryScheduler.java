@@ -0,0 +1,107 @@
+package cpen221.mp3.cache;
+
+import java.util.concurrent.DelayQueue;
+
+public class ExpiryScheduler implements Runnable {
+
+    /*
+    RI: queue is not null and only holds tasks that have not yet run.
+        thread is not null and is the only thread that takes tasks from queue.
+     */
+
+    /*
+    AF(scheduler) = a single background thread that runs each task in queue once its
+        deadline has passed, sleeping until the earliest deadline in between.
+     */
+
+    /*
+    Thread Safety Arguments:
+        shared: only read or written inside the static synchronized method shared()
+
+        queue: DelayQueue is a thread safe blocking queue, so caches on any thread can
+        schedule tasks while the scheduler thread takes them
+
+        running: is volatile so the scheduler thread sees shutdown() as soon as it is called
+
+        thread: is final and only started once, in the constructor
+
+        run: only the scheduler thread runs this method, and each task it runs does its
+        own locking on the cache it belongs to
+     */
+
+    private static ExpiryScheduler shared;
+
+    private final DelayQueue<ExpiryTask> queue;
+    private final Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Creates and starts a scheduler with its own daemon thread.
+     */
+    public ExpiryScheduler() {
+        this.queue = new DelayQueue<>();
+        this.running = true;
+        this.thread = new Thread(this, "cache-expiry");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Returns the scheduler shared by every cache that is not given its own.
+     * A new shared scheduler is started if the previous one was shut down.
+     * @return the running shared scheduler
+     */
+    public static synchronized ExpiryScheduler shared() {
+        if (shared == null || !shared.isRunning()) {
+            shared = new ExpiryScheduler();
+        }
+        return shared;
+    }
+
+    /**
+     * Queues a task to be run once its deadline passes.
+     * Tasks scheduled after shutdown() are never run.
+     * @param task is not null
+     */
+    void schedule(ExpiryTask task) {
+        if (this.running) {
+            this.queue.add(task);
+        }
+    }
+
+    /**
+     * @return true if this scheduler has not been shut down
+     */
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Stops the scheduler thread and drops every pending task.
+     * Caches using this scheduler still treat expired objects as missing when they are
+     * accessed, they are just no longer removed in the background.
+     */
+    public void shutdown() {
+        this.running = false;
+        this.thread.interrupt();
+        this.queue.clear();
+    }
+
+    /**
+     * Runs tasks as they become due, blocking in between so an idle scheduler uses no CPU.
+     * A task that throws, such as one whose cache has a removal listener that throws, does
+     * not stop the tasks after it from running.
+     */
+    public void run() {
+        while (this.running) {
+            try {
+                this.queue.take().run();
+            } catch (InterruptedException e) {
+                // shutdown() interrupts the thread, the loop condition then ends it
+            } catch (RuntimeException e) {
+                // the thread is shared by every cache, so one failing task must not end it
+                System.out.println("Expiry task failed: " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package cpen221.mp3.cache;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+abstract class ExpiryTask implements Delayed, Runnable {
+
+    /*
+    RI: deadline is a System.nanoTime() value.
+     */
+
+    /*
+    AF(task) = an action that the ExpiryScheduler runs once System.nanoTime()
+        reaches deadline.
+     */
+
+    private volatile long deadline;
+
+    /**
+     * Creates a task that is due after a delay.
+     * @param delayNanos the number of nanoseconds from now at which the task is due
+     */
+    ExpiryTask(long delayNanos) {
+        this.deadline = System.nanoTime() + delayNanos;
+    }
+
+    /**
+     * Moves the deadline of this task. Must only be called while the task is not queued.
+     * @param delayNanos the number of nanoseconds from now at which the task is due
+     */
+    void setDelay(long delayNanos) {
+        this.deadline = System.nanoTime() + delayNanos;
+    }
+
+    /**
+     * @param unit is not null
+     * @return the remaining delay of this task in the given unit
+     */
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(this.deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Orders tasks by deadline, earliest first.
+     * @param other is not null
+     * @return a negative, zero or positive value as this task is due before,
+     * with or after other
+     */
+    @Override
+    public int compareTo(Delayed other) {
+        return Long.compare(getDelay(TimeUnit.NANOSECONDS),
+                other.getDelay(TimeUnit.NANOSECONDS));
+    }
+}
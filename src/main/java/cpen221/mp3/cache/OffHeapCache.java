@@ -0,0 +1,242 @@
+package cpen221.mp3.cache;
+
+import java.util.concurrent.Executor;
+
+public class OffHeapCache {
+
+    /* weighs a page by the number of bytes of off-heap blocks it holds, and a page that holds
+       none as one block, as OffHeapStore.weigh */
+    private static final Weigher<OffHeapPage> BLOCK_WEIGHER = new Weigher<OffHeapPage>() {
+        @Override
+        public int weigh(OffHeapPage page) {
+            return Math.max(1, page.blocks.length) * OffHeapStore.BLOCK_SIZE;
+        }
+    };
+
+    /*
+    RI: store and pages are not null, maxBytes > 0.
+        every page in pages was allocated by store and has not been freed.
+     */
+
+    /*
+    AF(c) = a cache of text pages like Cache, except that the text of each page is kept
+        in store outside the Java heap and only a small handle for it is kept in pages.
+     */
+
+    /*
+    Thread Safety Arguments:
+        store and pages are thread safe and final. maxBytes is final.
+
+        a page is freed by the removal listener of pages once pages no longer holds it. A get
+        that found the page just before it was removed may then find it freed, in which case
+        the get is treated as a miss instead of reading blocks that may belong to another page.
+     */
+
+    private final OffHeapStore store;
+    private final Cache<OffHeapPage> pages;
+    private final long maxBytes;
+
+    /**
+     * Create a cache whose page text is stored outside the Java heap, so that a large cache
+     * does not add to garbage collection work. The cache is bounded by the number of bytes
+     * of off-heap memory its pages hold.
+     * @param maxBytes the number of bytes of off-heap memory the pages may hold, is > 0
+     * @param timeout the duration, in seconds, an object should be in the cache before it
+     *                times out
+     * @param concurrent if true hits do not lock the cache, see Cache
+     * @param refreshWindow >= 0 the duration in seconds before a page expires during which
+     *                      get(id, loader) reloads it in the background, see Cache
+     * @param refresher runs the background reloads, may be null if refreshWindow is 0
+     */
+    public OffHeapCache(long maxBytes, int timeout, boolean concurrent, int refreshWindow,
+                        Executor refresher) {
+        this.store = new OffHeapStore();
+        this.maxBytes = maxBytes;
+        this.pages = new Cache<>(maxBytes, timeout, BLOCK_WEIGHER, ExpiryScheduler.shared(),
+                concurrent, new RemovalListener<OffHeapPage>() {
+                    @Override
+                    public void onRemoval(OffHeapPage page, RemovalCause cause) {
+                        OffHeapCache.this.store.free(page);
+                    }
+                }, refreshWindow, refresher);
+    }
+
+    /**
+     * Create a cache whose page text is stored outside the Java heap, with no refresh ahead.
+     * @param maxBytes the number of bytes of off-heap memory the pages may hold, is > 0
+     * @param timeout the duration, in seconds, an object should be in the cache before it
+     *                times out
+     * @param concurrent if true hits do not lock the cache, see Cache
+     */
+    public OffHeapCache(long maxBytes, int timeout, boolean concurrent) {
+        this(maxBytes, timeout, concurrent, 0, null);
+    }
+
+    /**
+     * Add a page to the cache, copying its text off the heap. A page already in the cache
+     * with the same id is replaced.
+     * @param t is not null and is the page to add
+     * @return true if the page was added, false if its text is larger than the cache
+     */
+    public boolean put(TextCacheable t) {
+        OffHeapPage page = allocate(t.id(), t.getText());
+        if (page == null) {
+            return false;
+        }
+
+        if (!this.pages.put(page)) {
+            this.store.free(page);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Retrieve a page from the cache, copying its text back onto the heap.
+     * @param id the identifier of the page to be retrieved
+     * @return a new object holding the id and text of the page
+     * @throws NotFoundException if the page is not in the cache
+     */
+    public CacheObject get(String id) throws NotFoundException {
+        OffHeapPage page = this.pages.get(id);
+        String[] text = new String[1];
+
+        if (!this.store.read(page, text)) {
+            throw new NotFoundException();
+        }
+
+        return new CacheObject(id, text[0]);
+    }
+
+    /**
+     * Retrieve a page from the cache, loading it and copying it off the heap if it is not
+     * there. Concurrent misses on the same id share one load, and pages about to expire are
+     * reloaded in the background, as in Cache.get(id, loader). A page larger than the whole
+     * cache is returned without being copied off the heap, to every caller that shared its
+     * load.
+     * @param id the identifier of the page to be retrieved
+     * @param loader is not null and loads the page if it is not in the cache
+     * @return a new object holding the id and text of the page
+     * @throws NotFoundException if the page is not in the cache and loader can't find it
+     */
+    public CacheObject get(String id, final CacheLoader<CacheObject> loader)
+            throws NotFoundException {
+        for (int attempt = 0; ; attempt++) {
+            OffHeapPage page;
+            try {
+                page = this.pages.get(id, new CacheLoader<OffHeapPage>() {
+                    @Override
+                    public OffHeapPage load(String key) throws NotFoundException {
+                        return offHeap(loader.load(key));
+                    }
+
+                    @Override
+                    public OffHeapPage reload(String key, OffHeapPage old)
+                            throws NotFoundException {
+                        String[] text = new String[1];
+                        if (!OffHeapCache.this.store.read(old, text)) {
+                            return load(key);
+                        }
+                        return offHeap(loader.reload(key, new CacheObject(key, text[0])));
+                    }
+
+                    @Override
+                    public long lifetimeNanos(String key, long timeoutNanos) {
+                        return loader.lifetimeNanos(key, timeoutNanos);
+                    }
+
+                    private OffHeapPage offHeap(CacheObject loaded) throws NotFoundException {
+                        OffHeapPage loadedPage = allocate(loaded.id(), loaded.getText());
+                        if (loadedPage == null) {
+                            throw new TooLargeException(loaded);
+                        }
+                        return loadedPage;
+                    }
+                });
+            } catch (TooLargeException e) {
+                // every thread that waited for the load gets the page it read
+                return e.page;
+            }
+
+            String[] text = new String[1];
+            if (this.store.read(page, text)) {
+                return new CacheObject(id, text[0]);
+            } else if (attempt > 0) {
+                // the page was removed again before it could be read, the cache is thrashing
+                return loader.load(id);
+            }
+            // the page was removed, and freed, before it could be read, so load it again
+            // through the cache so that concurrent misses still share one load
+        }
+    }
+
+    /**
+     * Update the last refresh time for the page with the provided id.
+     * @param id the identifier of the page to "touch"
+     * @return true if successful and false otherwise
+     */
+    public boolean touch(String id) {
+        return this.pages.touch(id);
+    }
+
+    /**
+     * Replace the text of a page in the cache and refresh it.
+     * @param t the page to update
+     * @return true if a page with the same id was in the cache and has been replaced
+     */
+    public boolean update(TextCacheable t) {
+        return this.pages.touch(t.id()) && put(t);
+    }
+
+    /**
+     * Records the time taken to load a page that was not found in the cache.
+     * @param loadNanos >= 0 the time the load took, in nanoseconds
+     */
+    public void recordLoad(long loadNanos) {
+        this.pages.recordLoad(loadNanos);
+    }
+
+    /**
+     * Copies the text of a page off the heap, first removing the least recently used pages
+     * until it fits, so that the store only grows when the pages it holds fill it.
+     * @param id is not null and is the id of the page
+     * @param text is the text of the page, may be null
+     * @return the handle of the stored page, or null if its text is larger than the cache
+     */
+    private OffHeapPage allocate(String id, String text) {
+        byte[] bytes = OffHeapStore.encode(text);
+        long weight = OffHeapStore.weigh(bytes);
+        if (weight > this.maxBytes) {
+            return null;
+        }
+
+        this.pages.makeRoom(weight);
+        return this.store.allocate(id, bytes);
+    }
+
+    /**
+     * @return a snapshot of the counts of this cache since it was created, see Cache.stats()
+     */
+    public CacheStats stats() {
+        return this.pages.stats();
+    }
+
+    /**
+     * @return the number of bytes of off-heap memory allocated for the cache, including
+     * blocks that are currently free
+     */
+    public long offHeapBytes() {
+        return this.store.capacityBytes();
+    }
+
+    /* thrown by a load whose page is larger than the whole cache, so that the page reaches
+       every thread waiting for the load without being copied off the heap */
+    private static class TooLargeException extends NotFoundException {
+        private final CacheObject page;
+
+        private TooLargeException(CacheObject page) {
+            this.page = page;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package cpen221.mp3.cache;
+
+class OffHeapPage implements Cacheable {
+
+    /*
+    RI: id and blocks are not null.
+        length is -1 if the page has no text, otherwise it is the number of bytes of text
+        stored in blocks, and blocks.length * OffHeapStore.BLOCK_SIZE >= length.
+     */
+
+    /*
+    AF(page) = the on-heap handle of a page whose text is stored in the blocks of an
+        OffHeapStore. released is true once the blocks have been given back to the store
+        and may hold another page's text.
+     */
+
+    /*
+    Thread Safety Arguments:
+        id, blocks and length are final and never changed after construction.
+        released is only read or written while holding the lock of the store that
+        allocated the page.
+     */
+
+    private final String id;
+    final int[] blocks;
+    final int length;
+    boolean released;
+
+    /**
+     * Creates a handle for a page stored off the heap.
+     * @param id of the page
+     * @param blocks the indices of the store blocks holding the page text, in order
+     * @param length the number of bytes of text, or -1 if the page has no text
+     */
+    OffHeapPage(String id, int[] blocks, int length) {
+        this.id = id;
+        this.blocks = blocks;
+        this.length = length;
+        this.released = false;
+    }
+
+    /**
+     * gets id of OffHeapPage
+     * @return id of OffHeapPage
+     */
+    public String id() {
+        return this.id;
+    }
+}
@@ -0,0 +1,197 @@
+package cpen221.mp3.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+class OffHeapStore {
+
+    /*
+    RI: slabs is not null and every slab is a direct ByteBuffer of SLAB_BLOCKS * BLOCK_SIZE
+            bytes.
+        freeBlocks[0..freeCount) are the indices of the blocks that no live page uses.
+            Block i is at byte (i % SLAB_BLOCKS) * BLOCK_SIZE of slabs.get(i / SLAB_BLOCKS).
+     */
+
+    /*
+    AF(store) = an arena of fixed size blocks outside the Java heap. Each live page owns
+        the blocks listed in its handle, every other block is free.
+     */
+
+    /*
+    Thread Safety Arguments:
+        lock: reads of page text hold the read lock, so they run at the same time as each
+        other. allocate and free hold the write lock, so a page is never freed or its blocks
+        reused while its text is being read.
+
+        slabs, freeBlocks and freeCount: are only changed while holding the write lock
+
+        each read works on its own duplicate of a slab, so readers never share a buffer
+        position
+     */
+
+    /* the size in bytes of one block */
+    static final int BLOCK_SIZE = 4096;
+
+    /* the number of blocks in one slab, 4 MiB of memory */
+    private static final int SLAB_BLOCKS = 1024;
+
+    private final List<ByteBuffer> slabs;
+    private int[] freeBlocks;
+    private int freeCount;
+    private final ReadWriteLock lock;
+
+    /**
+     * Creates an empty store. Slabs are allocated as pages are added.
+     */
+    OffHeapStore() {
+        this.slabs = new ArrayList<>();
+        this.freeBlocks = new int[0];
+        this.freeCount = 0;
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * @param text is the text of a page, may be null
+     * @return the UTF-8 bytes of text, or null if text is null
+     */
+    static byte[] encode(String text) {
+        return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param bytes is the encoded text of a page, may be null
+     * @return the number of bytes of blocks a page with that text is charged for. A page
+     * with no text is charged one block, so that its handle is not free.
+     */
+    static long weigh(byte[] bytes) {
+        if (bytes == null) {
+            return BLOCK_SIZE;
+        }
+        return (long) Math.max(1, (bytes.length + BLOCK_SIZE - 1) / BLOCK_SIZE) * BLOCK_SIZE;
+    }
+
+    /**
+     * Copies the text of a page into free blocks, allocating a new slab if there are
+     * not enough of them.
+     * @param id is not null and is the id of the page
+     * @param bytes is the text of the page encoded by encode, may be null
+     * @return the handle of the stored page
+     */
+    OffHeapPage allocate(String id, byte[] bytes) {
+        if (bytes == null) {
+            return new OffHeapPage(id, new int[0], -1);
+        }
+
+        int[] blocks = new int[(bytes.length + BLOCK_SIZE - 1) / BLOCK_SIZE];
+
+        this.lock.writeLock().lock();
+        try {
+            while (this.freeCount < blocks.length) {
+                addSlab();
+            }
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i] = this.freeBlocks[--this.freeCount];
+                int offset = i * BLOCK_SIZE;
+                block(blocks[i]).put(bytes, offset, Math.min(BLOCK_SIZE, bytes.length - offset));
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+
+        return new OffHeapPage(id, blocks, bytes.length);
+    }
+
+    /**
+     * Copies the text of a page back onto the heap.
+     * @param page is not null and was allocated by this store
+     * @param text is not null and has length 1, text[0] is set to the page text
+     * @return false if the page has been freed, in which case text is not changed
+     */
+    boolean read(OffHeapPage page, String[] text) {
+        this.lock.readLock().lock();
+        try {
+            if (page.released) {
+                return false;
+            }
+            if (page.length < 0) {
+                text[0] = null;
+                return true;
+            }
+
+            byte[] bytes = new byte[page.length];
+            for (int i = 0; i < page.blocks.length; i++) {
+                int offset = i * BLOCK_SIZE;
+                block(page.blocks[i]).get(bytes, offset,
+                        Math.min(BLOCK_SIZE, bytes.length - offset));
+            }
+            text[0] = new String(bytes, StandardCharsets.UTF_8);
+            return true;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gives the blocks of a page back to the store. Does nothing if the page has
+     * already been freed.
+     * @param page is not null and was allocated by this store
+     */
+    void free(OffHeapPage page) {
+        this.lock.writeLock().lock();
+        try {
+            if (page.released) {
+                return;
+            }
+            page.released = true;
+            for (int block : page.blocks) {
+                this.freeBlocks[this.freeCount++] = block;
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of bytes of off-heap memory the store has allocated
+     */
+    long capacityBytes() {
+        this.lock.readLock().lock();
+        try {
+            return (long) this.slabs.size() * SLAB_BLOCKS * BLOCK_SIZE;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Allocates a new slab and adds its blocks to the free list.
+     * Must be called while holding the write lock.
+     */
+    private void addSlab() {
+        int first = this.slabs.size() * SLAB_BLOCKS;
+        this.slabs.add(ByteBuffer.allocateDirect(SLAB_BLOCKS * BLOCK_SIZE));
+
+        this.freeBlocks = Arrays.copyOf(this.freeBlocks, first + SLAB_BLOCKS);
+        for (int i = SLAB_BLOCKS - 1; i >= 0; i--) {
+            this.freeBlocks[this.freeCount++] = first + i;
+        }
+    }
+
+    /**
+     * Returns a buffer positioned at the start of a block, with its own position and limit
+     * so that it can be used without affecting other threads.
+     * Must be called while holding the read or write lock.
+     * @param block the index of an allocated block
+     * @return a buffer whose next BLOCK_SIZE bytes are the block
+     */
+    private ByteBuffer block(int block) {
+        ByteBuffer slab = this.slabs.get(block / SLAB_BLOCKS).duplicate();
+        slab.position((block % SLAB_BLOCKS) * BLOCK_SIZE);
+        return slab;
+    }
+}
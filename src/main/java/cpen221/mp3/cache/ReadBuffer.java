@@ -0,0 +1,86 @@
+package cpen221.mp3.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+class ReadBuffer<E> {
+
+    /*
+    RI: stripes is not null, its length is a power of two and every stripe is not null.
+     */
+
+    /*
+    AF(buffer) = the reads recorded since the last drain, split into stripes so that
+        threads rarely write to the same stripe. A stripe that is full drops new reads
+        until it is drained, so some reads may be lost.
+     */
+
+    /*
+    Thread Safety Arguments:
+        stripes: is final, each stripe only uses atomic slots and an atomic write count,
+        so record can be called by any number of threads without locking
+
+        drain: must only be called by one thread at a time, which Cache ensures by only
+        draining while holding its lock
+     */
+
+    /* the number of reads one stripe holds before it asks to be drained */
+    static final int STRIPE_SIZE = 32;
+
+    private final Stripe[] stripes;
+
+    /**
+     * Creates an empty buffer with about one stripe per processor.
+     */
+    ReadBuffer() {
+        int count = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Records a read without blocking. The read is dropped if its stripe is full.
+     * @param e is not null
+     * @return true if the stripe is full and the buffer should be drained
+     */
+    boolean record(E e) {
+        int index = (int) Thread.currentThread().getId() & (this.stripes.length - 1);
+        Stripe stripe = this.stripes[index];
+        int slot = stripe.writes.getAndIncrement();
+        if (slot < STRIPE_SIZE) {
+            stripe.slots.lazySet(slot, e);
+            return slot == STRIPE_SIZE - 1;
+        }
+        return true;
+    }
+
+    /**
+     * Passes every recorded read to consumer and empties the buffer.
+     * @param consumer is not null
+     */
+    @SuppressWarnings("unchecked")
+    void drain(Consumer<E> consumer) {
+        for (Stripe stripe : this.stripes) {
+            int count = Math.min(stripe.writes.get(), STRIPE_SIZE);
+            for (int i = 0; i < count; i++) {
+                Object e = stripe.slots.getAndSet(i, null);
+                if (e != null) {
+                    consumer.accept((E) e);
+                }
+            }
+            stripe.writes.set(0);
+        }
+    }
+
+    /**
+     * One ring of read slots and the number of reads written into it.
+     */
+    private static class Stripe {
+        private final AtomicReferenceArray<Object> slots =
+                new AtomicReferenceArray<>(STRIPE_SIZE);
+        private final AtomicInteger writes = new AtomicInteger();
+    }
+}
@@ -0,0 +1,14 @@
+package cpen221.mp3.cache;
+
+public enum RemovalCause {
+
+    /* the object was removed to make room for another object */
+    EVICTED,
+
+    /* the object was not refreshed within the timeout of the cache */
+    EXPIRED,
+
+    /* another object with the same id was put in the cache */
+    REPLACED
+
+}
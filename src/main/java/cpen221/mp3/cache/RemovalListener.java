@@ -0,0 +1,14 @@
+package cpen221.mp3.cache;
+
+public interface RemovalListener<T extends Cacheable> {
+
+    /**
+     * Called after an object has been removed from a cache.
+     * This is never called while the cache is locked, but it may be called by several
+     * threads at once, so implementations must be thread safe.
+     * @param t is not null and is the object that was removed
+     * @param cause is not null and is the reason t was removed
+     */
+    void onRemoval(T t, RemovalCause cause);
+
+}
@@ -0,0 +1,99 @@
+package cpen221.mp3.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+class StatsCounter {
+
+    /*
+    RI: every counter is not null and only ever grows
+     */
+
+    /*
+    AF(sc) = the number of hits, misses, successful puts, removals by cause and loads a
+        cache has seen since it was created, and the total time spent loading, in nanoseconds
+     */
+
+    /*
+    Thread Safety Arguments:
+        every counter is a LongAdder, so threads recording at the same time update separate
+        cells instead of fighting over one value. A snapshot reads the counters one at a time,
+        so it may count a request that happens while it is being taken in some counters and
+        not in others.
+     */
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder puts;
+    private final LongAdder evictions;
+    private final LongAdder expirations;
+    private final LongAdder replacements;
+    private final LongAdder loads;
+    private final LongAdder loadTime;
+
+    /**
+     * Creates a counter with every count at zero.
+     */
+    StatsCounter() {
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.puts = new LongAdder();
+        this.evictions = new LongAdder();
+        this.expirations = new LongAdder();
+        this.replacements = new LongAdder();
+        this.loads = new LongAdder();
+        this.loadTime = new LongAdder();
+    }
+
+    /**
+     * Records a get that found its object.
+     */
+    void recordHit() {
+        this.hits.increment();
+    }
+
+    /**
+     * Records a get that did not find its object.
+     */
+    void recordMiss() {
+        this.misses.increment();
+    }
+
+    /**
+     * Records an object put in the cache.
+     */
+    void recordPut() {
+        this.puts.increment();
+    }
+
+    /**
+     * Records an object removed from the cache.
+     * @param cause is not null and is the reason the object was removed
+     */
+    void recordRemoval(RemovalCause cause) {
+        if (cause == RemovalCause.EVICTED) {
+            this.evictions.increment();
+        } else if (cause == RemovalCause.EXPIRED) {
+            this.expirations.increment();
+        } else {
+            this.replacements.increment();
+        }
+    }
+
+    /**
+     * Records the load of an object that was not in the cache.
+     * @param loadNanos >= 0 the time the load took, in nanoseconds
+     */
+    void recordLoad(long loadNanos) {
+        this.loads.increment();
+        this.loadTime.add(loadNanos);
+    }
+
+    /**
+     * @return the current counts
+     */
+    CacheStats snapshot() {
+        return new CacheStats(this.hits.sum(), this.misses.sum(), this.puts.sum(),
+                this.evictions.sum(), this.expirations.sum(), this.replacements.sum(),
+                this.loads.sum(), this.loadTime.sum());
+    }
+}
@@ -0,0 +1,10 @@
+package cpen221.mp3.cache;
+
+public interface TextCacheable extends Cacheable {
+
+    /**
+     * @return the text stored in this object
+     */
+    String getText();
+
+}
@@ -1,12 +1,9 @@
 package cpen221.mp3.cache;
 
-import java.time.LocalDateTime;
-
 public class TimePair {
 
     /*
-    RI: this.lastAccess is not null
-        this.expiryTime is not null
+    RI: this.lastAccess and this.expiryTime are System.nanoTime() values
      */
 
     /*
@@ -15,15 +12,23 @@ public class TimePair {
         this.expiryTime is the time of expiry.
      */
 
-    private final LocalDateTime lastAccess;
-    private final LocalDateTime expiryTime;
+    /*
+    Thread Safety Arguments:
+        lastAccess and expiryTime are volatile, so a change made by one thread is seen by
+        all others. They are written independently, so an access and a refresh of the same
+        pair running at once never overwrite each other.
+     */
+
+    private volatile long lastAccess;
+    private volatile long expiryTime;
 
     /**
-     * Constructs an immutable pair of times
-     * @param lastAccessed time of last access is not null
-     * @param expiry time of expiry is not null
+     * Constructs a pair of times that is updated in place as the cached object
+     * is accessed and refreshed
+     * @param lastAccessed System.nanoTime() of last access
+     * @param expiry System.nanoTime() of expiry
      */
-    public TimePair(LocalDateTime lastAccessed, LocalDateTime expiry) {
+    public TimePair(long lastAccessed, long expiry) {
         this.lastAccess = lastAccessed;
         this.expiryTime = expiry;
     }
@@ -32,7 +37,7 @@ public class TimePair {
      * returns lastAccess time
      * @return this.lastAccess
      */
-    public LocalDateTime getLastAccess() {
+    public long getLastAccess() {
         return this.lastAccess;
     }
 
@@ -40,7 +45,32 @@ public class TimePair {
      * returns expiryTime
      * @return this.expiryTime
      */
-    public LocalDateTime getExpiryTime() {
+    public long getExpiryTime() {
         return this.expiryTime;
     }
+
+    /**
+     * Checks if the expiry time has passed
+     * @param now a System.nanoTime() value
+     * @return true if now is after this.expiryTime
+     */
+    public boolean isExpired(long now) {
+        return now - this.expiryTime > 0;
+    }
+
+    /**
+     * sets lastAccess time
+     * @param lastAccessed System.nanoTime() of last access
+     */
+    void setLastAccess(long lastAccessed) {
+        this.lastAccess = lastAccessed;
+    }
+
+    /**
+     * sets expiryTime
+     * @param expiry System.nanoTime() of expiry
+     */
+    void setExpiryTime(long expiry) {
+        this.expiryTime = expiry;
+    }
 }
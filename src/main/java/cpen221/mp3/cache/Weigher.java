@@ -0,0 +1,25 @@
+package cpen221.mp3.cache;
+
+public interface Weigher<T extends Cacheable> {
+
+    /**
+     * Computes how much of a cache's capacity an object takes up.
+     * The weight of an object must not change while it is in a cache.
+     * @param t is not null
+     * @return the weight of t, >= 0
+     */
+    int weigh(T t);
+
+    /**
+     * @return a weigher that gives every object a weight of 1, so that the capacity
+     * of a cache is its number of objects
+     */
+    static <T extends Cacheable> Weigher<T> singletonWeigher() {
+        return new Weigher<T>() {
+            @Override
+            public int weigh(T t) {
+                return 1;
+            }
+        };
+    }
+}
@@ -1,5 +1,8 @@
 package cpen221.mp3.server;
 
+import cpen221.mp3.cache.CacheStats;
+import cpen221.mp3.wikimediator.Deadline;
+import cpen221.mp3.wikimediator.DeadlineExceededException;
 import cpen221.mp3.wikimediator.WikiMediator;
 import java.net.Socket;
 import java.net.ServerSocket;
@@ -53,7 +56,8 @@ public class WikiMediatorServer {
         All refrences to class field are to ones that are threadsafe/in a threadsafe way.
 
         handle: This method is thread safe because it only uses local variables
-        and variables which are thread safe.
+        and variables which are thread safe. The deadline of a request is shared with
+        the thread running the request, and Deadline is thread safe.
 
         getWikiReply: This method is thread safe because it only uses
         local variables/variables that are only accessed
@@ -180,17 +184,29 @@ public class WikiMediatorServer {
                     int timeout = Integer.parseInt(request.get("timeout").getAsString()
                             .replaceAll(",", ""));
                     ExecutorService executorService = Executors.newSingleThreadExecutor();
+                    // stops the work of the request, not just the wait for it, at the timeout
+                    Deadline deadline = Deadline.after(timeout, TimeUnit.SECONDS);
 
                     Future<JsonObject> result = executorService.submit(new Callable<JsonObject>() {
                         @Override
                         public JsonObject call() throws Exception {
-                            return getWikiReply(request);
+                            return getWikiReply(request, deadline);
                         }
                     });
 
                     try {
                         returningObject = result.get(timeout, TimeUnit.SECONDS);
-                    } catch (InterruptedException | ExecutionException e) {
+                    } catch (ExecutionException e) {
+
+                        returningObject.addProperty("id", request.get("id").getAsString());
+                        returningObject.addProperty("status", this.FAILURE_STATUS);
+                        if (e.getCause() instanceof DeadlineExceededException) {
+                            returningObject.addProperty("response", "Operation timed out");
+                        } else {
+                            returningObject.addProperty("response", "Execution Failed");
+                        }
+
+                    } catch (InterruptedException e) {
 
                         returningObject.addProperty("id", request.get("id").getAsString());
                         returningObject.addProperty("status", this.FAILURE_STATUS);
@@ -204,11 +220,12 @@ public class WikiMediatorServer {
 
                     }
 
+                    deadline.cancel();
                     executorService.shutdownNow();
 
 
                 } else {
-                    returningObject = getWikiReply(request);
+                    returningObject = getWikiReply(request, Deadline.none());
                 }
 
                     //write stats to file!
@@ -238,11 +255,12 @@ public class WikiMediatorServer {
     /**
      * Helper method to get the correct Json formatted reply
      * from WikiMediator based on the request.
-     * @param request is a correctly formatted JsonObject for the server where
-     *                request.has("timeout") = false
+     * @param request is a correctly formatted JsonObject for the server
+     * @param deadline is not null, getConnectedPages, getPath and executeQuery stop working
+     *                 on the request once it expires
      * @return correctly formatted reply containing the results of this wikimediator method.
      */
-    private JsonObject getWikiReply(JsonObject request) {
+    private JsonObject getWikiReply(JsonObject request, Deadline deadline) {
 
         Gson gson = new Gson();
         JsonObject returningObject = new JsonObject();
@@ -271,7 +289,7 @@ public class WikiMediatorServer {
         } else if (type.equals("getConnectedPages")) {
             String pageTitle = request.get("pageTitle").getAsString();
             int hops = request.get("hops").getAsInt();
-            List<String> result = this.wmInstance.getConnectedPages(pageTitle, hops);
+            List<String> result = this.wmInstance.getConnectedPages(pageTitle, hops, deadline);
 
             returningObject.addProperty("id", id);
             returningObject.addProperty("status", this.SUCCESS_STATUS);
@@ -303,7 +321,7 @@ public class WikiMediatorServer {
         } else if (type.equals("getPath")) {
             String startPage = request.get("startPage").getAsString();
             String stopPage = request.get("stopPage").getAsString();
-            List<String> result = this.wmInstance.getPath(startPage, stopPage);
+            List<String> result = this.wmInstance.getPath(startPage, stopPage, deadline);
 
             returningObject.addProperty("id", id);
             returningObject.addProperty("status", this.SUCCESS_STATUS);
@@ -311,7 +329,14 @@ public class WikiMediatorServer {
 
         } else if (type.equals("executeQuery")) {
             String query = request.get("query").getAsString();
-            List<String> result = this.wmInstance.executeQuery(query);
+            List<String> result = this.wmInstance.executeQuery(query, deadline);
+
+            returningObject.addProperty("id", id);
+            returningObject.addProperty("status", this.SUCCESS_STATUS);
+            returningObject.addProperty("response", gson.toJson(result));
+
+        } else if (type.equals("cacheStats")) {
+            CacheStats result = this.wmInstance.cacheStats();
 
             returningObject.addProperty("id", id);
             returningObject.addProperty("status", this.SUCCESS_STATUS);
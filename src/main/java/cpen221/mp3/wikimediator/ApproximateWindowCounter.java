@@ -0,0 +1,127 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class ApproximateWindowCounter {
+
+    /*
+    RI: buckets, seconds and total are not null, buckets and seconds have the same length
+            and that length is > 0.
+        seconds[i] is the second buckets.get(i) was last used for, or Long.MIN_VALUE if it
+            has never been used, with Math.floorMod(seconds[i], length) == i for every used
+            bucket.
+        total is the sum of the sketches of all buckets.
+     */
+
+    /*
+    AF(counter) = an approximate count of the keys counted in the last length seconds,
+        where buckets.get(i) counts the keys counted in second seconds[i] and total estimates
+        the count of a key over every bucket. Buckets of seconds that have left the window are
+        only emptied the next time the counter is used.
+     */
+
+    /*
+    Thread Safety Arguments:
+        ApproximateWindowCounter is not thread safe. The WikiMediator that owns a counter
+        only uses it while holding its own lock.
+     */
+
+    private final List<HeavyHitters> buckets;
+    private final long[] seconds;
+    private final CountMinSketch total;
+
+    /**
+     * Creates a counter in which no key has been counted.
+     * @param length > 0 the number of seconds in the window
+     * @param epsilon 0 < epsilon < 1 the largest error of a count, as a fraction of the keys
+     *                counted in the window
+     * @param delta 0 < delta < 1 the largest probability that a count is further off than
+     *              epsilon
+     */
+    ApproximateWindowCounter(int length, double epsilon, double delta) {
+        this.buckets = new ArrayList<>();
+        this.seconds = new long[length];
+        for (int i = 0; i < length; i++) {
+            this.buckets.add(new HeavyHitters(epsilon, delta));
+            this.seconds[i] = Long.MIN_VALUE;
+        }
+        this.total = new CountMinSketch(this.buckets.get(0).sketch());
+    }
+
+    /**
+     * Counts a key once in a second, in constant time. Counting in a second that is already
+     * out of the window of a later second the counter was used in has no effect.
+     * @param key is not null
+     * @param second the second the key is counted in
+     */
+    void increment(String key, long second) {
+        int slot = Math.floorMod(second, this.seconds.length);
+        if (second < this.seconds[slot]) {
+            return;
+        }
+        if (second > this.seconds[slot]) {
+            expire(slot);
+            this.seconds[slot] = second;
+        }
+
+        this.buckets.get(slot).increment(key);
+        this.total.add(key, 1);
+    }
+
+    /**
+     * Lists the keys that look most common in the window that ends at a second, in time
+     * that does not depend on the number of keys counted.
+     * @param limit >= 0 the largest number of keys to return
+     * @param second is not before any second the counter was used in before
+     * @return at most limit keys counted in the last length seconds up to and including
+     * second, in non-increasing order of their estimated count there, which includes every
+     * key counted more than epsilon times the number of keys counted there. Keys with the same
+     * estimate are in alphabetical order.
+     */
+    List<String> top(int limit, long second) {
+        // a key common in the window is common in at least one second, so is in its summary
+        Set<String> candidates = new HashSet<>();
+        for (int slot = 0; slot < this.seconds.length; slot++) {
+            if (this.seconds[slot] <= second - this.seconds.length) {
+                expire(slot);
+            } else {
+                candidates.addAll(this.buckets.get(slot).candidates());
+            }
+        }
+
+        final Map<String, Long> estimates = new HashMap<>();
+        for (String key : candidates) {
+            estimates.put(key, this.total.estimate(key));
+        }
+        List<String> top = new ArrayList<>(candidates);
+        Collections.sort(top);
+        top.sort(new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return Long.compare(estimates.get(b), estimates.get(a));
+            }
+        });
+
+        return new ArrayList<>(top.subList(0, Math.min(limit, top.size())));
+    }
+
+    /**
+     * Removes the counts of a bucket from the window and empties it, in time proportional to
+     * the size of the sketches if it is not empty.
+     * @param slot the index of the bucket
+     */
+    private void expire(int slot) {
+        HeavyHitters bucket = this.buckets.get(slot);
+        if (!bucket.isEmpty()) {
+            this.total.subtract(bucket.sketch());
+            bucket.clear();
+        }
+    }
+}
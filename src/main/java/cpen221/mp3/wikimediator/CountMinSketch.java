@@ -0,0 +1,130 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.Arrays;
+
+class CountMinSketch {
+
+    /*
+    RI: counts is not null, has depth > 0 rows and every row has the same width > 0.
+        every count is >= 0.
+     */
+
+    /*
+    AF(sketch) = an estimate of the number of times each key was added, which is the smallest
+        of counts[row][column(key, row)] over all rows. Each estimate is at least the true
+        count, and is more than the true count by more than epsilon times the total of all
+        counts with a probability of at most delta, for the epsilon and delta it was made with.
+     */
+
+    /*
+    Thread Safety Arguments:
+        CountMinSketch is not thread safe. The WikiMediator that owns a sketch only uses it
+        while holding its own lock.
+     */
+
+    private final long[][] counts;
+
+    /**
+     * Creates a sketch in which no key has been added.
+     * @param epsilon 0 < epsilon < 1 the largest error of an estimate, as a fraction of the
+     *                total of all counts
+     * @param delta 0 < delta < 1 the largest probability that an estimate is further off
+     *              than epsilon
+     */
+    CountMinSketch(double epsilon, double delta) {
+        int width = (int) Math.ceil(Math.E / epsilon);
+        int depth = (int) Math.ceil(Math.log(1 / delta));
+        this.counts = new long[Math.max(1, depth)][width];
+    }
+
+    /**
+     * Creates a sketch in which no key has been added, of the same size as another sketch.
+     * @param other is not null
+     */
+    CountMinSketch(CountMinSketch other) {
+        this.counts = new long[other.counts.length][other.counts[0].length];
+    }
+
+    /**
+     * Adds a key to the sketch a number of times, in time proportional to its depth.
+     * @param key is not null
+     * @param times >= 0
+     */
+    void add(String key, long times) {
+        long hash = hash(key);
+        for (int row = 0; row < this.counts.length; row++) {
+            this.counts[row][column(hash, row)] += times;
+        }
+    }
+
+    /**
+     * @param key is not null
+     * @return an estimate of the number of times key was added, which is never less than
+     * that number
+     */
+    long estimate(String key) {
+        long hash = hash(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < this.counts.length; row++) {
+            estimate = Math.min(estimate, this.counts[row][column(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Takes every key added to another sketch out of this sketch.
+     * @param other is not null, has the same size as this sketch and every key added to it
+     *              was also added to this sketch at least as many times
+     */
+    void subtract(CountMinSketch other) {
+        for (int row = 0; row < this.counts.length; row++) {
+            for (int column = 0; column < this.counts[row].length; column++) {
+                this.counts[row][column] -= other.counts[row][column];
+            }
+        }
+    }
+
+    /**
+     * Removes every key from the sketch.
+     */
+    void clear() {
+        for (long[] row : this.counts) {
+            Arrays.fill(row, 0);
+        }
+    }
+
+    /**
+     * @return the number of counts the sketch holds
+     */
+    int size() {
+        return this.counts.length * this.counts[0].length;
+    }
+
+    /**
+     * @param hash the hash of a key
+     * @param row >= 0 a row of the sketch
+     * @return the column the key is counted in on row. Each row uses a different hash of the
+     * key, made from its two halves.
+     */
+    private int column(long hash, int row) {
+        int combined = (int) hash + row * (int) (hash >>> 32);
+        return Math.floorMod(combined, this.counts[row].length);
+    }
+
+    /**
+     * @param key is not null
+     * @return a 64 bit FNV-1a hash of the characters of key, with its bits mixed so that both
+     * halves depend on every character
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,89 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.concurrent.TimeUnit;
+
+public class Deadline {
+
+    /*
+    RI: if bounded is false, expiresAt is 0
+     */
+
+    /*
+    AF(d) = a point in time after which an operation should stop working, expiresAt in
+        System.nanoTime() if bounded, or never if not bounded. The operation should also stop
+        once d, or the deadline parent it was made from, has been cancelled. parent is null
+        if d was not made from another deadline.
+     */
+
+    /*
+    Thread Safety Arguments:
+        parent, bounded and expiresAt are final and are never changed.
+
+        cancelled is volatile, so a thread that cancels a deadline is seen by every thread
+        checking it, and it only ever changes from false to true.
+     */
+
+    private final Deadline parent;
+    private final boolean bounded;
+    private final long expiresAt;
+    private volatile boolean cancelled;
+
+    /**
+     * @param parent the deadline this one was made from, or null
+     * @param bounded true if this deadline expires at expiresAt
+     * @param expiresAt the time, in System.nanoTime(), this deadline expires at if bounded
+     */
+    private Deadline(Deadline parent, boolean bounded, long expiresAt) {
+        this.parent = parent;
+        this.bounded = bounded;
+        this.expiresAt = expiresAt;
+        this.cancelled = false;
+    }
+
+    /**
+     * @param duration >= 0 the time from now until the deadline
+     * @param unit is not null and is the unit of duration
+     * @return a new deadline that expires after duration, unless it is cancelled before
+     */
+    public static Deadline after(long duration, TimeUnit unit) {
+        return new Deadline(null, true, System.nanoTime() + unit.toNanos(duration));
+    }
+
+    /**
+     * @return a new deadline that only expires if it is cancelled
+     */
+    public static Deadline none() {
+        return new Deadline(null, false, 0);
+    }
+
+    /**
+     * @param duration >= 0 the longest time from now until the new deadline
+     * @param unit is not null and is the unit of duration
+     * @return a new deadline that expires after duration or when this deadline expires,
+     * whichever is sooner
+     */
+    public Deadline within(long duration, TimeUnit unit) {
+        return new Deadline(this, true, System.nanoTime() + unit.toNanos(duration));
+    }
+
+    /**
+     * Makes this deadline, and every deadline made from it, expire now. Work checking these
+     * deadlines stops the next time it checks.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * @return true if this deadline has passed or has been cancelled, false otherwise
+     */
+    public boolean isExpired() {
+        if (this.cancelled) {
+            return true;
+        }
+        if (this.bounded && System.nanoTime() - this.expiresAt >= 0) {
+            return true;
+        }
+        return this.parent != null && this.parent.isExpired();
+    }
+}
@@ -0,0 +1,7 @@
+package cpen221.mp3.wikimediator;
+
+public class DeadlineExceededException extends RuntimeException {
+    public DeadlineExceededException() {
+        super();
+    }
+}
@@ -0,0 +1,293 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class FrequencyIndex {
+
+    /*
+    RI: nodes is not null.
+        lowest and highest are both null if nodes is empty, otherwise lowest is the bucket
+            with the smallest count and highest the bucket with the largest count.
+        the buckets form a list from lowest to highest through higher, and back through lower,
+            with strictly increasing counts > 0 and no empty buckets.
+        every node in nodes is in exactly one bucket, the one whose count is its count, and
+            nodes maps the key of every node to that node.
+     */
+
+    /*
+    AF(index) = the number of times each key in nodes has been counted, where the count of
+        a key is the count of the bucket its node is in. Within a bucket, keys are in the
+        order they reached that count, from head to tail.
+     */
+
+    /*
+    Thread Safety Arguments:
+        FrequencyIndex is not thread safe. The WikiMediator that owns an index only uses it
+        while holding its own lock.
+     */
+
+    private final Map<String, Node> nodes;
+    private Bucket lowest;
+    private Bucket highest;
+
+    /**
+     * Creates an index in which no key has been counted.
+     */
+    FrequencyIndex() {
+        this.nodes = new HashMap<>();
+        this.lowest = null;
+        this.highest = null;
+    }
+
+    /**
+     * Creates an index from the times keys were counted before.
+     * @param times is not null and maps each key to the times it was counted, with at least
+     *              one time per key
+     * @return an index where every key of times has been counted once for each of its
+     * times. Keys with the same count are ordered by their last time, earliest first.
+     */
+    static FrequencyIndex of(Map<String, Timeline> times) {
+        List<Map.Entry<String, Timeline>> entries = new ArrayList<>(times.entrySet());
+        entries.sort(new Comparator<Map.Entry<String, Timeline>>() {
+            @Override
+            public int compare(Map.Entry<String, Timeline> a, Map.Entry<String, Timeline> b) {
+                if (a.getValue().size() != b.getValue().size()) {
+                    return Long.compare(a.getValue().size(), b.getValue().size());
+                }
+                return a.getValue().last().compareTo(b.getValue().last());
+            }
+        });
+
+        FrequencyIndex index = new FrequencyIndex();
+        for (Map.Entry<String, Timeline> entry : entries) {
+            // counts only increase along entries, so every key goes in the highest bucket
+            long count = entry.getValue().size();
+            if (index.highest == null || index.highest.count != count) {
+                index.link(new Bucket(count), index.highest, null);
+            }
+            Node node = new Node(entry.getKey());
+            index.nodes.put(node.key, node);
+            index.highest.append(node);
+        }
+
+        return index;
+    }
+
+    /**
+     * Counts a key once more, in constant time.
+     * @param key is not null
+     */
+    void increment(String key) {
+        Node node = this.nodes.get(key);
+
+        if (node == null) {
+            node = new Node(key);
+            this.nodes.put(key, node);
+            if (this.lowest == null || this.lowest.count != 1) {
+                link(new Bucket(1), null, this.lowest);
+            }
+            this.lowest.append(node);
+            return;
+        }
+
+        promote(node, node);
+    }
+
+    /**
+     * Replaces one of the least counted keys with a key that is not in the index, which is
+     * counted once more than the key it replaces, in constant time. This is the step that
+     * keeps a Space-Saving summary at a fixed number of keys.
+     * @param key is not null and is not in the index, which is not empty
+     */
+    void replaceLowest(String key) {
+        Node lowestNode = this.lowest.head;
+        Node node = new Node(key);
+        this.nodes.remove(lowestNode.key);
+        this.nodes.put(key, node);
+        promote(lowestNode, node);
+    }
+
+    /**
+     * @param key is not null
+     * @return true if key has been counted, false otherwise
+     */
+    boolean contains(String key) {
+        return this.nodes.containsKey(key);
+    }
+
+    /**
+     * @param key is not null
+     * @return the number of times key has been counted, 0 if it has not
+     */
+    long count(String key) {
+        Node node = this.nodes.get(key);
+        return node == null ? 0 : node.bucket.count;
+    }
+
+    /**
+     * @return the number of keys that have been counted
+     */
+    int size() {
+        return this.nodes.size();
+    }
+
+    /**
+     * Moves a node out of its bucket, and another node into the bucket with a count one
+     * higher.
+     * @param from is not null and is in a bucket
+     * @param to is not null and is from, or a node that is not in a bucket
+     */
+    private void promote(Node from, Node to) {
+        Bucket lower = from.bucket;
+        Bucket higher = lower.higher;
+        if (higher == null || higher.count != lower.count + 1) {
+            higher = new Bucket(lower.count + 1);
+            link(higher, lower, lower.higher);
+        }
+
+        lower.remove(from);
+        higher.append(to);
+        if (lower.head == null) {
+            unlink(lower);
+        }
+    }
+
+    /**
+     * Lists the most counted keys, in time proportional to limit.
+     * @param limit >= 0 the largest number of keys to return
+     * @return at most limit keys, in non-increasing order of count. Keys with the same count
+     * are in the order they reached that count.
+     */
+    List<String> top(int limit) {
+        List<String> top = new ArrayList<>();
+
+        for (Bucket bucket = this.highest; bucket != null; bucket = bucket.lower) {
+            for (Node node = bucket.head; node != null; node = node.next) {
+                if (top.size() >= limit) {
+                    return top;
+                }
+                top.add(node.key);
+            }
+        }
+
+        return top;
+    }
+
+    /**
+     * Adds a bucket to the list of buckets.
+     * @param bucket is not null and not in the list
+     * @param lower the bucket to add it above, or null to make it the lowest
+     * @param higher the bucket to add it below, or null to make it the highest
+     */
+    private void link(Bucket bucket, Bucket lower, Bucket higher) {
+        bucket.lower = lower;
+        bucket.higher = higher;
+        if (lower == null) {
+            this.lowest = bucket;
+        } else {
+            lower.higher = bucket;
+        }
+        if (higher == null) {
+            this.highest = bucket;
+        } else {
+            higher.lower = bucket;
+        }
+    }
+
+    /**
+     * Removes a bucket from the list of buckets.
+     * @param bucket is not null and is in the list
+     */
+    private void unlink(Bucket bucket) {
+        if (bucket.lower == null) {
+            this.lowest = bucket.higher;
+        } else {
+            bucket.lower.higher = bucket.higher;
+        }
+        if (bucket.higher == null) {
+            this.highest = bucket.lower;
+        } else {
+            bucket.higher.lower = bucket.lower;
+        }
+    }
+
+    private static class Bucket {
+
+        /*
+        RI: count > 0. head and tail are both null, or head is the first and tail the last
+            node of a list linked through next and back through prev, each with bucket = this.
+         */
+
+        /*
+        AF(b) = the keys counted count times, from head to tail
+         */
+
+        final long count;
+        Bucket lower;
+        Bucket higher;
+        Node head;
+        Node tail;
+
+        Bucket(long count) {
+            this.count = count;
+        }
+
+        /**
+         * @param node is not null and not in a bucket
+         */
+        void append(Node node) {
+            node.bucket = this;
+            node.prev = this.tail;
+            node.next = null;
+            if (this.tail == null) {
+                this.head = node;
+            } else {
+                this.tail.next = node;
+            }
+            this.tail = node;
+        }
+
+        /**
+         * @param node is not null and is in this bucket
+         */
+        void remove(Node node) {
+            if (node.prev == null) {
+                this.head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                this.tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            node.bucket = null;
+        }
+    }
+
+    private static class Node {
+
+        /*
+        RI: key is not null
+         */
+
+        /*
+        AF(n) = the key key, counted bucket.count times
+         */
+
+        final String key;
+        Bucket bucket;
+        Node prev;
+        Node next;
+
+        Node(String key) {
+            this.key = key;
+        }
+    }
+}
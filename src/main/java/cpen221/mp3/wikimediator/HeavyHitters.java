@@ -0,0 +1,132 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+class HeavyHitters {
+
+    /*
+    RI: sketch and summary are not null, capacity > 0, summary holds at most capacity keys.
+        every key counted is added to sketch once, and summary counts each key it holds at
+            least as many times as it was counted.
+     */
+
+    /*
+    AF(hh) = an approximate count of the keys counted, where summary is a Space-Saving
+        summary of the capacity keys that look most common and sketch estimates the count of
+        any key. Both only ever count a key too many times, so the count of a key is the
+        smaller of the two.
+     */
+
+    /*
+    Thread Safety Arguments:
+        HeavyHitters is not thread safe. The WikiMediator that owns one only uses it while
+        holding its own lock.
+     */
+
+    private final CountMinSketch sketch;
+    private final int capacity;
+    private FrequencyIndex summary;
+
+    /**
+     * Creates a summary in which no key has been counted.
+     * @param epsilon 0 < epsilon < 1 the largest error of a count, as a fraction of the keys
+     *                counted
+     * @param delta 0 < delta < 1 the largest probability that a count of the sketch is
+     *              further off than epsilon
+     */
+    HeavyHitters(double epsilon, double delta) {
+        this.sketch = new CountMinSketch(epsilon, delta);
+        this.capacity = (int) Math.ceil(1 / epsilon);
+        this.summary = new FrequencyIndex();
+    }
+
+    /**
+     * Counts a key once more, in constant time. If the summary is full and does not hold the
+     * key, the key takes the place of one of the least counted keys in it.
+     * @param key is not null
+     */
+    void increment(String key) {
+        this.sketch.add(key, 1);
+        if (this.summary.contains(key) || this.summary.size() < this.capacity) {
+            this.summary.increment(key);
+        } else {
+            this.summary.replaceLowest(key);
+        }
+    }
+
+    /**
+     * @param key is not null
+     * @return an estimate of the number of times key was counted, which is never less than
+     * that number
+     */
+    long estimate(String key) {
+        long estimate = this.sketch.estimate(key);
+        if (this.summary.contains(key)) {
+            estimate = Math.min(estimate, this.summary.count(key));
+        }
+        return estimate;
+    }
+
+    /**
+     * @return the keys in the summary, which include every key counted more than epsilon
+     * times the number of keys counted
+     */
+    List<String> candidates() {
+        return this.summary.top(this.summary.size());
+    }
+
+    /**
+     * Lists the keys that look most common, in time proportional to the capacity.
+     * @param limit >= 0 the largest number of keys to return
+     * @return at most limit keys of the summary, in non-increasing order of their estimate
+     */
+    List<String> top(int limit) {
+        List<String> top = candidates();
+        final List<Long> estimates = new ArrayList<>();
+        for (String key : top) {
+            estimates.add(estimate(key));
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < top.size(); i++) {
+            order.add(i);
+        }
+        // a stable sort keeps keys with the same estimate in the order of the summary
+        order.sort(new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(estimates.get(b), estimates.get(a));
+            }
+        });
+
+        List<String> sorted = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, order.size()); i++) {
+            sorted.add(top.get(order.get(i)));
+        }
+        return sorted;
+    }
+
+    /**
+     * @return the sketch that counts every key, which must not be changed
+     */
+    CountMinSketch sketch() {
+        return this.sketch;
+    }
+
+    /**
+     * @return true if no key has been counted, false otherwise
+     */
+    boolean isEmpty() {
+        return this.summary.size() == 0;
+    }
+
+    /**
+     * Removes every key.
+     */
+    void clear() {
+        this.sketch.clear();
+        this.summary = new FrequencyIndex();
+    }
+}
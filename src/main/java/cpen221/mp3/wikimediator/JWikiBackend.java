@@ -0,0 +1,388 @@
+package cpen221.mp3.wikimediator;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import fastily.jwiki.core.Wiki;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class JWikiBackend implements WikiBackend {
+
+    /*
+    RI: wiki, apiUrl and requests are not null
+     */
+
+    /*
+    AF(backend) = the wiki hosted at the domain wiki was created with, reached over the
+        network through jWiki for single titles and through the MediaWiki query API at apiUrl
+        for batches of titles. requests is the number of requests sent so far.
+     */
+
+    /*
+    Thread Safety Arguments:
+        wiki and apiUrl are final and jWiki requests do not share state between calls.
+        Batch requests only use local variables.
+
+        requests is an AtomicLong, so requests sent at the same time are all counted.
+     */
+
+    /* the time, in milliseconds, to wait to connect to or read from the wiki */
+    private static final int TIMEOUT_MILLIS = 30000;
+
+    /* the most requests sent for one batch of backlinks. Some pages have millions of
+       backlinks, and following every continuation for them would outlast any search that
+       asked for them */
+    private static final int MAX_BACKLINK_REQUESTS = 20;
+
+    private final Wiki wiki;
+    private final String apiUrl;
+    private final AtomicLong requests;
+
+    /**
+     * Creates a backend for a wiki on the network, with jWiki logging turned off.
+     * @param domain is not null and is the domain of the wiki, such as "en.wikipedia.org"
+     */
+    public JWikiBackend(String domain) {
+        this.wiki = new Wiki(domain);
+        this.wiki.enableLogging(false);
+        this.apiUrl = "https://" + domain + "/w/api.php";
+        this.requests = new AtomicLong();
+    }
+
+    @Override
+    public List<String> search(String query, int limit) {
+        this.requests.incrementAndGet();
+        return this.wiki.search(query, limit);
+    }
+
+    @Override
+    public String getPageText(String title) {
+        this.requests.incrementAndGet();
+        return this.wiki.getPageText(title);
+    }
+
+    @Override
+    public List<String> getLinksOnPage(String title) {
+        this.requests.incrementAndGet();
+        return this.wiki.getLinksOnPage(title);
+    }
+
+    @Override
+    public List<String> whatLinksHere(String title) {
+        this.requests.incrementAndGet();
+        return this.wiki.whatLinksHere(title);
+    }
+
+    @Override
+    public List<String> getCategoryMembers(String category) {
+        this.requests.incrementAndGet();
+        return this.wiki.getCategoryMembers(category);
+    }
+
+    @Override
+    public List<String> getCategoriesOnPage(String title) {
+        this.requests.incrementAndGet();
+        return this.wiki.getCategoriesOnPage(title);
+    }
+
+    @Override
+    public String getLastEditor(String title) {
+        this.requests.incrementAndGet();
+        return this.wiki.getLastEditor(title);
+    }
+
+    @Override
+    public boolean exists(String title) {
+        this.requests.incrementAndGet();
+        return this.wiki.exists(title);
+    }
+
+    @Override
+    public long getRequestCount() {
+        return this.requests.get();
+    }
+
+    /**
+     * Looks up the links on several pages, BATCH_SIZE pages per request. If a batch request
+     * fails, the pages of that batch are looked up one at a time instead.
+     * @param titles is not null and contains no nulls
+     * @return a map from every title in titles to getLinksOnPage of that title
+     */
+    @Override
+    public Map<String, List<String>> getLinksOnPages(List<String> titles) {
+        Map<String, List<String>> links = new HashMap<>();
+
+        for (List<String> batch : WikiBackend.batches(titles)) {
+            try {
+                links.putAll(queryLinks(batch, "links", "pllimit", Integer.MAX_VALUE));
+            } catch (IOException | RuntimeException e) {
+                links.putAll(WikiBackend.super.getLinksOnPages(batch));
+            }
+        }
+
+        return links;
+    }
+
+    /**
+     * Looks up the pages that link to several pages, BATCH_SIZE pages per request. If a batch
+     * request fails, the pages of that batch are looked up one at a time instead.
+     * At most MAX_BACKLINK_REQUESTS requests are sent for a batch, so pages with very many
+     * backlinks only get the backlinks those requests returned.
+     * @param titles is not null and contains no nulls
+     * @return a map from every title in titles to whatLinksHere of that title, or to part
+     * of it if the page has too many backlinks
+     */
+    @Override
+    public Map<String, List<String>> getLinksToPages(List<String> titles) {
+        Map<String, List<String>> links = new HashMap<>();
+
+        for (List<String> batch : WikiBackend.batches(titles)) {
+            try {
+                links.putAll(queryLinks(batch, "linkshere", "lhlimit", MAX_BACKLINK_REQUESTS));
+            } catch (IOException | RuntimeException e) {
+                links.putAll(WikiBackend.super.getLinksToPages(batch));
+            }
+        }
+
+        return links;
+    }
+
+    /**
+     * Runs a MediaWiki query for a list of titles on each page of a batch.
+     * @param batch is not null and holds at most BATCH_SIZE titles
+     * @param prop is not null and is the property that lists the titles, "links" or
+     *             "linkshere"
+     * @param limit is not null and is the name of the limit parameter of prop
+     * @param maxRequests > 0 and is the most requests to send, see queryPages
+     * @return a map from every title in batch to the titles prop lists for it
+     * @throws IOException if a request fails
+     */
+    private Map<String, List<String>> queryLinks(List<String> batch, String prop, String limit,
+                                                 int maxRequests) throws IOException {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("prop", prop);
+        params.put(limit, "max");
+        Map<String, String> normalized = new HashMap<>();
+
+        Map<String, List<String>> batchLinks = new HashMap<>();
+        for (JsonObject page : queryPages(batch, params, normalized, maxRequests)) {
+            String title = page.get("title").getAsString();
+            if (!batchLinks.containsKey(title)) {
+                batchLinks.put(title, new ArrayList<>());
+            }
+            List<String> pageLinks = batchLinks.get(title);
+            if (page.has(prop)) {
+                for (JsonElement link : page.getAsJsonArray(prop)) {
+                    pageLinks.add(link.getAsJsonObject().get("title").getAsString());
+                }
+            }
+        }
+
+        Map<String, List<String>> links = new HashMap<>();
+        for (String title : batch) {
+            List<String> pageLinks = batchLinks.get(normalize(title, batchLinks, normalized));
+            links.put(title, pageLinks == null ? new ArrayList<>() : pageLinks);
+        }
+        return links;
+    }
+
+    /**
+     * Looks up the last editor of several pages, BATCH_SIZE pages per request. If a batch
+     * request fails, the pages of that batch are looked up one at a time instead.
+     * @param titles is not null and contains no nulls
+     * @return a map from every title in titles to getLastEditor of that title
+     */
+    @Override
+    public Map<String, String> getLastEditors(List<String> titles) {
+        Map<String, String> editors = new HashMap<>();
+
+        for (List<String> batch : WikiBackend.batches(titles)) {
+            Map<String, String> params = new LinkedHashMap<>();
+            params.put("prop", "revisions");
+            params.put("rvprop", "user");
+            Map<String, String> normalized = new HashMap<>();
+            try {
+                Map<String, String> batchEditors = new HashMap<>();
+                for (JsonObject page : queryPages(batch, params, normalized,
+                        Integer.MAX_VALUE)) {
+                    String editor = null;
+                    if (page.has("revisions")) {
+                        JsonArray revisions = page.getAsJsonArray("revisions");
+                        if (revisions.size() > 0) {
+                            JsonObject revision = revisions.get(0).getAsJsonObject();
+                            editor = revision.get("user").getAsString();
+                        }
+                    }
+                    String title = page.get("title").getAsString();
+                    if (editor != null || !batchEditors.containsKey(title)) {
+                        batchEditors.put(title, editor);
+                    }
+                }
+                for (String title : batch) {
+                    editors.put(title,
+                            batchEditors.get(normalize(title, batchEditors, normalized)));
+                }
+            } catch (IOException | RuntimeException e) {
+                editors.putAll(WikiBackend.super.getLastEditors(batch));
+            }
+        }
+
+        return editors;
+    }
+
+    /**
+     * Checks whether several pages exist, BATCH_SIZE pages per request. If a batch request
+     * fails, the pages of that batch are checked one at a time instead.
+     * @param titles is not null and contains no nulls
+     * @return a map from every title in titles to exists of that title
+     */
+    @Override
+    public Map<String, Boolean> pagesExist(List<String> titles) {
+        Map<String, Boolean> exist = new HashMap<>();
+
+        for (List<String> batch : WikiBackend.batches(titles)) {
+            Map<String, String> params = new LinkedHashMap<>();
+            params.put("prop", "info");
+            Map<String, String> normalized = new HashMap<>();
+            try {
+                Map<String, Boolean> batchExist = new HashMap<>();
+                for (JsonObject page : queryPages(batch, params, normalized,
+                        Integer.MAX_VALUE)) {
+                    batchExist.put(page.get("title").getAsString(),
+                            !page.has("missing") && !page.has("invalid"));
+                }
+                for (String title : batch) {
+                    Boolean exists = batchExist.get(normalize(title, batchExist, normalized));
+                    exist.put(title, exists != null && exists);
+                }
+            } catch (IOException | RuntimeException e) {
+                exist.putAll(WikiBackend.super.pagesExist(batch));
+            }
+        }
+
+        return exist;
+    }
+
+    /**
+     * Runs a MediaWiki query for a batch of titles, following continuations until every
+     * result has been read or maxRequests requests have been sent.
+     * @param titles is not null and holds at most BATCH_SIZE titles
+     * @param params is not null and holds the query parameters other than the titles
+     * @param normalized is not null, the titles the wiki normalized are added to it, from
+     *                   the title asked for to the title the wiki returned
+     * @param maxRequests > 0 and is the most requests to send, the results of continuations
+     *                    past it are left out
+     * @return every page object of every response, a page may appear more than once if its
+     * results were split over several responses
+     * @throws IOException if a request fails
+     */
+    private List<JsonObject> queryPages(List<String> titles, Map<String, String> params,
+                                        Map<String, String> normalized, int maxRequests)
+            throws IOException {
+        List<JsonObject> pages = new ArrayList<>();
+        Map<String, String> continuation = new HashMap<>();
+        int sent = 0;
+
+        do {
+            StringBuilder url = new StringBuilder(this.apiUrl);
+            url.append("?action=query&format=json&formatversion=2&titles=");
+            url.append(encode(String.join("|", titles)));
+            for (Map.Entry<String, String> param : params.entrySet()) {
+                url.append('&').append(param.getKey()).append('=').append(encode(param.getValue()));
+            }
+            for (Map.Entry<String, String> param : continuation.entrySet()) {
+                url.append('&').append(param.getKey()).append('=').append(encode(param.getValue()));
+            }
+
+            JsonObject response = get(url.toString());
+            sent++;
+            JsonObject query = response.getAsJsonObject("query");
+            if (query != null) {
+                if (query.has("normalized")) {
+                    for (JsonElement n : query.getAsJsonArray("normalized")) {
+                        normalized.put(n.getAsJsonObject().get("from").getAsString(),
+                                n.getAsJsonObject().get("to").getAsString());
+                    }
+                }
+                if (query.has("pages")) {
+                    for (JsonElement page : query.getAsJsonArray("pages")) {
+                        pages.add(page.getAsJsonObject());
+                    }
+                }
+            }
+
+            continuation.clear();
+            if (response.has("continue")) {
+                for (Map.Entry<String, JsonElement> c
+                        : response.getAsJsonObject("continue").entrySet()) {
+                    continuation.put(c.getKey(), c.getValue().getAsString());
+                }
+            }
+        } while (!continuation.isEmpty() && sent < maxRequests);
+
+        return pages;
+    }
+
+    /**
+     * @param title is not null and is a title that was asked for in a query
+     * @param results is not null and is keyed by the titles the query returned
+     * @param normalized is not null and holds the titles the query normalized
+     * @return the title the wiki returned for title
+     */
+    private static String normalize(String title, Map<String, ?> results,
+                                    Map<String, String> normalized) {
+        if (results.containsKey(title) || !normalized.containsKey(title)) {
+            return title;
+        }
+        return normalized.get(title);
+    }
+
+    /**
+     * Sends a GET request to the wiki and counts it.
+     * @param url is not null and is the full url of the request
+     * @return the JSON response
+     * @throws IOException if the request fails
+     */
+    private JsonObject get(String url) throws IOException {
+        this.requests.incrementAndGet();
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setRequestProperty("User-Agent", "WikiMediatorServer");
+
+        try (Reader reader = new InputStreamReader(connection.getInputStream(),
+                StandardCharsets.UTF_8)) {
+            return new JsonParser().parse(reader).getAsJsonObject();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * @param value is not null
+     * @return value encoded for use in a url
+     */
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // every JVM supports UTF-8
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package cpen221.mp3.wikimediator;
+
+import cpen221.mp3.cache.Cache;
+import cpen221.mp3.cache.Cacheable;
+import cpen221.mp3.cache.ExpiryScheduler;
+import cpen221.mp3.cache.NotFoundException;
+import cpen221.mp3.cache.Weigher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+class LinkGraph {
+
+    /* weighs the links of a page by their number, so that a page with no links weighs 1 */
+    private static final Weigher<Links> LINK_WEIGHER = new Weigher<Links>() {
+        @Override
+        public int weigh(Links links) {
+            return links.targets.length + 1;
+        }
+    };
+
+    /* the number of titles in each chunk of a title table */
+    private static final int CHUNK_SIZE = 4096;
+
+    /*
+    RI: wiki, cache, backlinks, loading, loadingTo and titles are not null, maxTitles > 0.
+        every title in titles is a title some page linked to or was linked from when it was
+            looked up.
+        titles is not sealed, every other title table a Links refers to is.
+     */
+
+    /*
+    AF(graph) = the outgoing links of the pages of wiki that were looked up within the timeout
+        of cache, and the incoming links of the pages that were looked up within the timeout
+        of backlinks. Both are stored as arrays of integers that stand for titles in a title
+        table, so that a title linked to by many pages is only stored once. titles is the
+        table new pages are added to, and is replaced by an empty table once it holds
+        maxTitles titles. loading and loadingTo map every title whose outgoing or incoming
+        links are being looked up on the wiki to the result of that lookup.
+     */
+
+    /*
+    Thread Safety Arguments:
+        wiki, cache and backlinks are final and thread safe.
+
+        loading and loadingTo are final and concurrent maps. A thread only looks up a title on
+        the wiki if it put the future of that title in the map, so concurrent lookups of a
+        title share one request, like Cache.get(id, loader).
+
+        titles is only read and changed while holding the lock of the graph, and a title table
+        only gains titles while holding that lock.
+
+        the titles of a Links are read without the lock. This is safe because a Links is
+        created after its titles are added to its table and is only reachable through cache
+        or backlinks, which publish it safely, and a title table never changes the titles it
+        already has.
+     */
+
+    private final WikiBackend wiki;
+    private final Cache<Links> cache;
+    private final Cache<Links> backlinks;
+    private final Map<String, CompletableFuture<List<String>>> loading;
+    private final Map<String, CompletableFuture<List<String>>> loadingTo;
+    private final int maxTitles;
+    private TitleTable titles;
+
+    /**
+     * Creates a cache of the outgoing and incoming links of the pages of a wiki.
+     * @param wiki is not null and is the wiki links are looked up on
+     * @param maxLinks > 0 the number of links the cache may hold in each direction, a page
+     *                 with no links counts as one link
+     * @param timeout >= 0 the duration, in seconds, the links of a page are kept after they
+     *                are looked up
+     */
+    LinkGraph(WikiBackend wiki, int maxLinks, int timeout) {
+        this.wiki = wiki;
+        this.cache = new Cache<>(maxLinks, timeout, LINK_WEIGHER, ExpiryScheduler.shared(),
+                true);
+        this.backlinks = new Cache<>(maxLinks, timeout, LINK_WEIGHER, ExpiryScheduler.shared(),
+                true);
+        this.loading = new ConcurrentHashMap<>();
+        this.loadingTo = new ConcurrentHashMap<>();
+        this.maxTitles = maxLinks;
+        this.titles = new TitleTable(maxLinks);
+    }
+
+    /**
+     * Looks up the links on several pages. Pages whose links are in the cache are read from
+     * it, the rest are looked up on the wiki together and added to the cache. Pages another
+     * thread is already looking up are not looked up again, their links are waited for.
+     * @param titles is not null and contains no nulls
+     * @return a map from every title in titles to the titles of the pages it links to
+     */
+    Map<String, List<String>> getLinks(List<String> titles) {
+        return lookup(this.cache, titles, true);
+    }
+
+    /**
+     * Looks up the pages that link to several pages. Pages whose backlinks are in the cache
+     * are read from it, the rest are looked up on the wiki together and added to the cache.
+     * Pages another thread is already looking up are not looked up again.
+     * @param titles is not null and contains no nulls
+     * @return a map from every title in titles to the titles of the pages that link to it
+     */
+    Map<String, List<String>> getLinksTo(List<String> titles) {
+        return lookup(this.backlinks, titles, false);
+    }
+
+    /**
+     * @param links is not null and is cache or backlinks
+     * @param titles is not null and contains no nulls
+     * @param outgoing true to look up the links on the pages, false to look up the pages
+     *                 that link to them
+     * @return a map from every title in titles to the titles of its links
+     */
+    private Map<String, List<String>> lookup(Cache<Links> links, List<String> titles,
+                                             boolean outgoing) {
+        Map<String, CompletableFuture<List<String>>> inFlight = outgoing ? this.loading
+                : this.loadingTo;
+        Map<String, List<String>> found = new HashMap<>();
+        Map<String, CompletableFuture<List<String>>> waiting = new HashMap<>();
+        Map<String, CompletableFuture<List<String>>> missing = new LinkedHashMap<>();
+
+        for (String title : titles) {
+            try {
+                found.put(title, links.get(title).decode());
+                continue;
+            } catch (NotFoundException e) {
+                // looked up below, by this thread or by the one already looking it up
+            }
+            CompletableFuture<List<String>> load = new CompletableFuture<>();
+            CompletableFuture<List<String>> other = inFlight.putIfAbsent(title, load);
+            if (other != null) {
+                waiting.put(title, other);
+            } else {
+                missing.put(title, load);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            try {
+                List<String> batch = new ArrayList<>(missing.keySet());
+                long loadStart = System.nanoTime();
+                Map<String, List<String>> loaded = outgoing ? this.wiki.getLinksOnPages(batch)
+                        : this.wiki.getLinksToPages(batch);
+                links.recordLoad(System.nanoTime() - loadStart);
+                for (String title : batch) {
+                    List<String> pageLinks = loaded.get(title);
+                    links.put(encode(title, pageLinks));
+                    found.put(title, pageLinks);
+                    missing.get(title).complete(pageLinks);
+                }
+            } catch (RuntimeException | Error e) {
+                for (CompletableFuture<List<String>> load : missing.values()) {
+                    load.completeExceptionally(e);
+                }
+                throw e;
+            } finally {
+                for (Map.Entry<String, CompletableFuture<List<String>>> load
+                        : missing.entrySet()) {
+                    inFlight.remove(load.getKey(), load.getValue());
+                }
+            }
+        }
+
+        for (Map.Entry<String, CompletableFuture<List<String>>> load : waiting.entrySet()) {
+            found.put(load.getKey(), join(load.getValue()));
+        }
+
+        return found;
+    }
+
+    /**
+     * Waits for a lookup started by another thread.
+     * @param load is not null and is the lookup of the links of a page
+     * @return the titles of the links
+     */
+    private static List<String> join(CompletableFuture<List<String>> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * Stores the links of a page as the indices of their titles in the title table, starting
+     * a new table if the current one does not have room for them.
+     * @param title is not null and is the title of the page
+     * @param pageLinks is not null and holds the titles of its links
+     * @return the links of the page
+     */
+    private synchronized Links encode(String title, List<String> pageLinks) {
+        if (!this.titles.hasRoom(pageLinks.size())) {
+            // the links still cached only read the titles of the old table, not its index
+            this.titles.seal();
+            this.titles = new TitleTable(Math.max(this.maxTitles, pageLinks.size()));
+        }
+
+        int[] targets = new int[pageLinks.size()];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = this.titles.intern(pageLinks.get(i));
+        }
+
+        return new Links(title, this.titles, targets);
+    }
+
+    private static class Links implements Cacheable {
+
+        /*
+        RI: title, table and targets are not null, every value in targets is the index of a
+            title in table
+         */
+
+        /*
+        AF(links) = the page titled title links to, or is linked from, the pages titled
+            table.title(t) for every t in targets, in order
+         */
+
+        private final String title;
+        private final TitleTable table;
+        private final int[] targets;
+
+        Links(String title, TitleTable table, int[] targets) {
+            this.title = title;
+            this.table = table;
+            this.targets = targets;
+        }
+
+        @Override
+        public String id() {
+            return this.title;
+        }
+
+        /**
+         * @return a new list of the titles of the pages linked to
+         */
+        List<String> decode() {
+            List<String> titles = new ArrayList<>(this.targets.length);
+            for (int target : this.targets) {
+                titles.add(this.table.title(target));
+            }
+            return titles;
+        }
+    }
+
+    private static class TitleTable {
+
+        /*
+        RI: chunks is not null, 0 <= size <= capacity.
+            ids is null if the table is sealed, otherwise it maps
+            chunks[i / CHUNK_SIZE][i % CHUNK_SIZE] to i for every 0 <= i < size.
+         */
+
+        /*
+        AF(table) = the titles table.title(0) to table.title(size - 1), each given the
+            index it was added at. A sealed table can no longer gain titles, so ids, which
+            is only needed to add titles, has been dropped.
+         */
+
+        private Map<String, Integer> ids;
+        private final String[][] chunks;
+        private final int capacity;
+        private int size;
+
+        /**
+         * @param capacity > 0 the number of titles the table can hold
+         */
+        TitleTable(int capacity) {
+            this.ids = new HashMap<>();
+            this.chunks = new String[(capacity + CHUNK_SIZE - 1) / CHUNK_SIZE][];
+            this.capacity = capacity;
+            this.size = 0;
+        }
+
+        /**
+         * @param titles >= 0
+         * @return true if the table is not sealed and the given number of new titles can be
+         * added to it
+         */
+        boolean hasRoom(int titles) {
+            return this.ids != null && this.size + titles <= this.capacity;
+        }
+
+        /**
+         * Stops the table from gaining titles and frees the index used to add them. The
+         * titles already in the table can still be read.
+         */
+        void seal() {
+            this.ids = null;
+        }
+
+        /**
+         * Adds a title to the table if it is not in it yet.
+         * @param title is not null and the table is not sealed
+         * @return the index of title in the table
+         */
+        int intern(String title) {
+            Integer id = this.ids.get(title);
+            if (id != null) {
+                return id;
+            }
+
+            int chunk = this.size / CHUNK_SIZE;
+            if (this.chunks[chunk] == null) {
+                this.chunks[chunk] = new String[CHUNK_SIZE];
+            }
+            this.chunks[chunk][this.size % CHUNK_SIZE] = title;
+            this.ids.put(title, this.size);
+            return this.size++;
+        }
+
+        /**
+         * @param id the index of a title in the table
+         * @return the title at index id
+         */
+        String title(int id) {
+            return this.chunks[id / CHUNK_SIZE][id % CHUNK_SIZE];
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package cpen221.mp3.wikimediator;
+
+public enum PageStorage {
+
+    /* page text is cached as Java strings */
+    PLAIN,
+
+    /* page text is cached Deflate compressed, see CompressedCacheObject */
+    COMPRESSED,
+
+    /* page text is cached outside the Java heap, see OffHeapCache */
+    OFF_HEAP
+
+}
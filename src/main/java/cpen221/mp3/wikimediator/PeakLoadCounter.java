@@ -0,0 +1,102 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+class PeakLoadCounter {
+
+    /*
+    RI: counts is not null and its length is > 0, 0 <= windowCount, 0 <= peak.
+        if latest is Long.MIN_VALUE, no request has been counted and every count is 0.
+        otherwise counts[Math.floorMod(s, length)] is the number of requests counted in second
+            s for every latest - length < s <= latest, every other count is 0, windowCount is
+            the sum of counts and peak >= windowCount.
+     */
+
+    /*
+    AF(counter) = the requests counted, one histogram bucket per second, where counts holds
+        the last length seconds up to second latest. peak is the largest number of requests
+        counted in any length seconds in a row, and windowCount the number counted in the
+        length seconds up to latest.
+     */
+
+    /*
+    Thread Safety Arguments:
+        PeakLoadCounter is not thread safe. The WikiMediator that owns a counter only uses it
+        while holding its own lock.
+     */
+
+    private final int[] counts;
+    private long latest;
+    private int windowCount;
+    private int peak;
+
+    /**
+     * Creates a counter in which no request has been counted.
+     * @param length > 0 the number of seconds in a window
+     */
+    PeakLoadCounter(int length) {
+        this.counts = new int[length];
+        this.latest = Long.MIN_VALUE;
+        this.windowCount = 0;
+        this.peak = 0;
+    }
+
+    /**
+     * Creates a counter from the requests made before.
+     * @param length > 0 the number of seconds in a window
+     * @param requests is not null and maps seconds to the number > 0 of requests made in them
+     * @return a counter in which every request in requests has been counted
+     */
+    static PeakLoadCounter of(int length, Map<Long, Integer> requests) {
+        PeakLoadCounter counter = new PeakLoadCounter(length);
+        for (Map.Entry<Long, Integer> second : new TreeMap<>(requests).entrySet()) {
+            counter.increment(second.getKey(), second.getValue());
+        }
+        return counter;
+    }
+
+    /**
+     * Counts a request made in a second, in constant time. A request made before the window
+     * of the latest second counted is only counted in that window if it is in it.
+     * @param second the second the request was made in
+     */
+    void increment(long second) {
+        increment(second, 1);
+    }
+
+    /**
+     * Counts requests made in the same second, as increment(second) for each of them.
+     * @param second the second the requests were made in
+     * @param requests > 0 the number of requests
+     */
+    private void increment(long second, int requests) {
+        if (this.latest == Long.MIN_VALUE || second - this.latest >= this.counts.length) {
+            Arrays.fill(this.counts, 0);
+            this.windowCount = 0;
+            this.latest = second;
+        } else if (second > this.latest) {
+            // the seconds between latest and second leave the window
+            while (this.latest < second) {
+                this.latest++;
+                int slot = Math.floorMod(this.latest, this.counts.length);
+                this.windowCount -= this.counts[slot];
+                this.counts[slot] = 0;
+            }
+        } else if (this.latest - second >= this.counts.length) {
+            return;
+        }
+
+        this.counts[Math.floorMod(second, this.counts.length)] += requests;
+        this.windowCount += requests;
+        this.peak = Math.max(this.peak, this.windowCount);
+    }
+
+    /**
+     * @return the largest number of requests counted in any length seconds in a row
+     */
+    int peak() {
+        return this.peak;
+    }
+}
@@ -0,0 +1,168 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+class SlidingWindowCounter {
+
+    /*
+    RI: buckets, seconds and counts are not null, buckets and seconds have the same length
+            and that length is > 0.
+        every bucket only holds counts > 0, and seconds[i] is the second buckets.get(i) was
+            last used for, or Long.MIN_VALUE if it has never been used, with
+            Math.floorMod(seconds[i], length) == i for every used bucket.
+        counts maps every key in a bucket to the sum of its counts over all buckets, and
+            holds no other keys.
+        every rank in counts is less than nextRank and no two keys have the same rank.
+     */
+
+    /*
+    AF(counter) = the number of times each key was counted in the last length seconds, where
+        buckets.get(i) holds the keys counted in second seconds[i]. Buckets of seconds that
+        have left the window are only emptied the next time the counter is used. A key with
+        a smaller rank has been counted in the window without a break for longer.
+     */
+
+    /*
+    Thread Safety Arguments:
+        SlidingWindowCounter is not thread safe. The WikiMediator that owns a counter only
+        uses it while holding its own lock.
+     */
+
+    private final List<Map<String, Integer>> buckets;
+    private final long[] seconds;
+    private final Map<String, Count> counts;
+    private long nextRank;
+
+    /**
+     * Creates a counter in which no key has been counted.
+     * @param length > 0 the number of seconds in the window
+     */
+    SlidingWindowCounter(int length) {
+        this.buckets = new ArrayList<>();
+        this.seconds = new long[length];
+        for (int i = 0; i < length; i++) {
+            this.buckets.add(new HashMap<>());
+            this.seconds[i] = Long.MIN_VALUE;
+        }
+        this.counts = new HashMap<>();
+        this.nextRank = 0;
+    }
+
+    /**
+     * Counts a key once in a second, in constant time. Counting in a second that is already
+     * out of the window of a later second the counter was used in has no effect.
+     * @param key is not null
+     * @param second the second the key is counted in
+     */
+    void increment(String key, long second) {
+        int slot = Math.floorMod(second, this.seconds.length);
+        if (second < this.seconds[slot]) {
+            return;
+        }
+        if (second > this.seconds[slot]) {
+            expire(slot);
+            this.seconds[slot] = second;
+        }
+
+        this.buckets.get(slot).merge(key, 1, Integer::sum);
+        Count count = this.counts.get(key);
+        if (count == null) {
+            count = new Count(this.nextRank++);
+            this.counts.put(key, count);
+        }
+        count.value++;
+    }
+
+    /**
+     * Lists the most counted keys of the window that ends at a second, in time proportional
+     * to the number of keys in the window.
+     * @param limit >= 0 the largest number of keys to return
+     * @param second is not before any second the counter was used in before
+     * @return at most limit keys counted in the last length seconds up to and including
+     * second, in non-increasing order of the number of times they were counted there. Keys
+     * counted the same number of times are ordered by how long they have been in the window,
+     * longest first.
+     */
+    List<String> top(int limit, long second) {
+        for (int slot = 0; slot < this.seconds.length; slot++) {
+            if (this.seconds[slot] <= second - this.seconds.length) {
+                expire(slot);
+            }
+        }
+        if (limit == 0) {
+            return new ArrayList<>();
+        }
+
+        Comparator<Map.Entry<String, Count>> order = new Comparator<Map.Entry<String, Count>>() {
+            @Override
+            public int compare(Map.Entry<String, Count> a, Map.Entry<String, Count> b) {
+                if (a.getValue().value != b.getValue().value) {
+                    return Integer.compare(b.getValue().value, a.getValue().value);
+                }
+                return Long.compare(a.getValue().rank, b.getValue().rank);
+            }
+        };
+
+        // keeps the best limit keys seen so far, with the worst of them at the head
+        PriorityQueue<Map.Entry<String, Count>> best =
+                new PriorityQueue<>(limit, Collections.reverseOrder(order));
+        for (Map.Entry<String, Count> entry : this.counts.entrySet()) {
+            if (best.size() < limit) {
+                best.add(entry);
+            } else if (order.compare(entry, best.peek()) < 0) {
+                best.poll();
+                best.add(entry);
+            }
+        }
+
+        List<Map.Entry<String, Count>> sorted = new ArrayList<>(best);
+        sorted.sort(order);
+        List<String> top = new ArrayList<>();
+        for (Map.Entry<String, Count> entry : sorted) {
+            top.add(entry.getKey());
+        }
+        return top;
+    }
+
+    /**
+     * Removes the counts of a bucket from the window and empties it.
+     * @param slot the index of the bucket
+     */
+    private void expire(int slot) {
+        Map<String, Integer> bucket = this.buckets.get(slot);
+        for (Map.Entry<String, Integer> expired : bucket.entrySet()) {
+            Count count = this.counts.get(expired.getKey());
+            count.value -= expired.getValue();
+            if (count.value == 0) {
+                this.counts.remove(expired.getKey());
+            }
+        }
+        bucket.clear();
+    }
+
+    private static class Count {
+
+        /*
+        RI: value >= 0, and value > 0 once the key has been counted
+         */
+
+        /*
+        AF(c) = a key counted value times in the window, that entered the window as the
+            rank-th key
+         */
+
+        final long rank;
+        int value;
+
+        Count(long rank) {
+            this.rank = rank;
+            this.value = 0;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package cpen221.mp3.wikimediator;
+
+public class StatsAccuracy {
+
+    /*
+    RI: if exact, epsilon and delta are 0, otherwise 0 < epsilon < 1 and 0 < delta < 1
+     */
+
+    /*
+    AF(a) = how a WikiMediator counts searches for zeitgeist and trending. If exact, every
+        search is kept with the times it was made. Otherwise only a fixed number of counts
+        is kept, a count may be too high by at most epsilon times the number of searches
+        counted, and the chance that it is further off is at most delta.
+     */
+
+    /*
+    Thread Safety Arguments:
+        every field is final and immutable, thus StatsAccuracy is thread safe
+     */
+
+    private final boolean exact;
+    private final double epsilon;
+    private final double delta;
+
+    /**
+     * @param exact true to keep every search
+     * @param epsilon the largest error of a count, as a fraction of the searches counted
+     * @param delta the largest probability that a count is further off than epsilon
+     */
+    private StatsAccuracy(boolean exact, double epsilon, double delta) {
+        this.exact = exact;
+        this.epsilon = epsilon;
+        this.delta = delta;
+    }
+
+    /**
+     * @return an accuracy with which every search is kept, so zeitgeist and trending are
+     * exact but use memory for every search ever made
+     */
+    public static StatsAccuracy exact() {
+        return new StatsAccuracy(true, 0, 0);
+    }
+
+    /**
+     * Memory for the counts grows with 1 / epsilon and with the logarithm of 1 / delta, and
+     * does not grow with the number of searches.
+     * @param epsilon 0 < epsilon < 1 the largest error of a count, as a fraction of the
+     *                searches counted. Any search made more than epsilon times the number of
+     *                searches counted is listed by zeitgeist or trending if limit allows.
+     * @param delta 0 < delta < 1 the largest probability that a count is further off than
+     *              epsilon
+     * @return an accuracy with which zeitgeist and trending are approximate
+     */
+    public static StatsAccuracy approximate(double epsilon, double delta) {
+        return new StatsAccuracy(false, epsilon, delta);
+    }
+
+    /**
+     * @return true if every search is kept, false if counts are approximate
+     */
+    public boolean isExact() {
+        return this.exact;
+    }
+
+    /**
+     * @return the largest error of a count, as a fraction of the searches counted, or 0 if
+     * counts are exact
+     */
+    public double epsilon() {
+        return this.epsilon;
+    }
+
+    /**
+     * @return the largest probability that a count is further off than epsilon, or 0 if
+     * counts are exact
+     */
+    public double delta() {
+        return this.delta;
+    }
+}
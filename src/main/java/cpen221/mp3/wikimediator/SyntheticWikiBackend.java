@@ -0,0 +1,423 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SyntheticWikiBackend implements WikiBackend {
+
+    /*
+    RI: titles, links, backlinks, categories, members and editors are not null.
+        titles.length = links.length = backlinks.length = categories.length = editors.length
+            = number of pages, and index maps titles[i] to i for every page i.
+        backlinks[j] lists, in order and once each, every page i with j in links[i].
+        every value in links is the index of a page, every value in categories is the index
+            of a category and members[c] lists, in order, every page i with c in categories[i].
+        page i links to page (i + 1) % titles.length, so every page can reach every other page.
+     */
+
+    /*
+    AF(backend) = an in-memory wiki of titles.length pages, where page i has the title
+        titles[i], links to the pages in links[i], is in the categories in categories[i] and
+        was last edited by editors[i]. Its text is generated from seed and i, so it is the
+        same every time it is asked for. Every request waits latencyMillis first, like a
+        request over the network would.
+     */
+
+    /*
+    Thread Safety Arguments:
+        titles, index, links, backlinks, categories, members and editors are filled in by the
+        constructor and never changed after, so they can be read by any number of threads.
+
+        seed, textLength and latencyMillis are final and immutable.
+
+        calls is an AtomicLong, so requests made at the same time are all counted. A batch
+        counts as one request for every BATCH_SIZE titles, like it would over the network.
+     */
+
+    /* the prefix of the title of every category */
+    private static final String CATEGORY_PREFIX = "Category:";
+
+    /* the words page text is made of */
+    private static final String[] WORDS = {"the", "of", "and", "in", "team", "season",
+        "league", "player", "game", "goal", "coach", "championship", "hockey", "club",
+        "national", "first", "history", "record", "played", "won"};
+
+    private final long seed;
+    private final int textLength;
+    private final int latencyMillis;
+    private final String[] titles;
+    private final Map<String, Integer> index;
+    private final int[][] links;
+    private final int[][] backlinks;
+    private final int[][] categories;
+    private final List<List<Integer>> members;
+    private final int[] editors;
+    private final AtomicLong calls;
+
+    /**
+     * Creates an in-memory wiki with 10 links and about 2000 characters of text per page.
+     * @param seed the seed the pages are generated from, the same seed gives the same wiki
+     * @param pages > 0 the number of pages
+     * @param latencyMillis >= 0 the time, in milliseconds, every request waits before it
+     *                      is answered
+     */
+    public SyntheticWikiBackend(long seed, int pages, int latencyMillis) {
+        this(seed, pages, 10, 2000, latencyMillis);
+    }
+
+    /**
+     * Creates an in-memory wiki of pages whose links, categories and last editors are drawn
+     * at random from seed.
+     * @param seed the seed the pages are generated from, the same seed gives the same wiki
+     * @param pages > 0 the number of pages, titled "Page 0" to "Page n", where n is pages - 1
+     * @param linksPerPage > 0 the average number of links on a page
+     * @param textLength >= 0 the average number of characters in the text of a page
+     * @param latencyMillis >= 0 the time, in milliseconds, every request waits before it
+     *                      is answered
+     */
+    public SyntheticWikiBackend(long seed, int pages, int linksPerPage, int textLength,
+                                int latencyMillis) {
+        this.seed = seed;
+        this.textLength = textLength;
+        this.latencyMillis = latencyMillis;
+        this.calls = new AtomicLong();
+
+        Random random = new Random(seed);
+        int categoryCount = Math.max(1, pages / 20);
+        int editorCount = Math.max(1, pages / 10);
+
+        this.titles = new String[pages];
+        this.index = new HashMap<>();
+        this.links = new int[pages][];
+        this.categories = new int[pages][];
+        this.members = new ArrayList<>();
+        this.editors = new int[pages];
+
+        for (int c = 0; c < categoryCount; c++) {
+            this.members.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < pages; i++) {
+            this.titles[i] = "Page " + i;
+            this.index.put(this.titles[i], i);
+
+            int[] pageLinks = new int[1 + random.nextInt(2 * linksPerPage)];
+            pageLinks[0] = (i + 1) % pages;
+            for (int l = 1; l < pageLinks.length; l++) {
+                pageLinks[l] = random.nextInt(pages);
+            }
+            this.links[i] = pageLinks;
+
+            int[] pageCategories = new int[1 + random.nextInt(3)];
+            for (int c = 0; c < pageCategories.length; c++) {
+                pageCategories[c] = random.nextInt(categoryCount);
+                List<Integer> categoryMembers = this.members.get(pageCategories[c]);
+                if (categoryMembers.isEmpty()
+                        || categoryMembers.get(categoryMembers.size() - 1) != i) {
+                    categoryMembers.add(i);
+                }
+            }
+            this.categories[i] = pageCategories;
+
+            this.editors[i] = random.nextInt(editorCount);
+        }
+
+        this.backlinks = invert(this.links);
+    }
+
+    /**
+     * @param links is not null and links[i] lists the pages page i links to
+     * @return an array whose j-th entry lists, in order and once each, every page i with j
+     * in links[i]
+     */
+    private static int[][] invert(int[][] links) {
+        int[] counts = new int[links.length];
+        int[] last = new int[links.length];
+        Arrays.fill(last, -1);
+        for (int i = 0; i < links.length; i++) {
+            for (int target : links[i]) {
+                if (last[target] != i) {
+                    last[target] = i;
+                    counts[target]++;
+                }
+            }
+        }
+
+        int[][] inverted = new int[links.length][];
+        for (int j = 0; j < links.length; j++) {
+            inverted[j] = new int[counts[j]];
+            counts[j] = 0;
+            last[j] = -1;
+        }
+        for (int i = 0; i < links.length; i++) {
+            for (int target : links[i]) {
+                if (last[target] != i) {
+                    last[target] = i;
+                    inverted[target][counts[target]++] = i;
+                }
+            }
+        }
+
+        return inverted;
+    }
+
+    @Override
+    public List<String> search(String query, int limit) {
+        waitForLatency();
+        String lowerQuery = query.toLowerCase(Locale.ROOT);
+        List<String> results = new ArrayList<>();
+
+        for (int i = 0; i < this.titles.length && results.size() < limit; i++) {
+            if (this.titles[i].toLowerCase(Locale.ROOT).contains(lowerQuery)) {
+                results.add(this.titles[i]);
+            }
+        }
+
+        return results;
+    }
+
+    @Override
+    public String getPageText(String title) {
+        waitForLatency();
+        Integer page = this.index.get(title);
+        if (page == null) {
+            return "";
+        }
+
+        Random random = new Random(this.seed * 1000003 + page);
+        StringBuilder text = new StringBuilder(this.textLength + 64);
+        text.append("'''").append(title).append("''' is a page.");
+        int link = 0;
+        while (text.length() < this.textLength) {
+            if (random.nextInt(12) == 0) {
+                int target = this.links[page][link++ % this.links[page].length];
+                text.append(" [[").append(this.titles[target]).append("]]");
+            } else {
+                text.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+            }
+        }
+        for (int category : this.categories[page]) {
+            text.append("\n[[").append(categoryTitle(category)).append("]]");
+        }
+
+        return text.toString();
+    }
+
+    @Override
+    public List<String> getLinksOnPage(String title) {
+        waitForLatency();
+        return linksOf(title);
+    }
+
+    @Override
+    public Map<String, List<String>> getLinksOnPages(List<String> titles) {
+        Map<String, List<String>> links = new HashMap<>();
+        for (List<String> batch : WikiBackend.batches(titles)) {
+            waitForLatency();
+            for (String title : batch) {
+                links.put(title, linksOf(title));
+            }
+        }
+        return links;
+    }
+
+    /**
+     * @param title is not null
+     * @return the titles of the pages that the page with the given title links to
+     */
+    private List<String> linksOf(String title) {
+        Integer page = this.index.get(title);
+        List<String> results = new ArrayList<>();
+        if (page == null) {
+            return results;
+        }
+
+        for (int target : this.links[page]) {
+            if (!results.contains(this.titles[target])) {
+                results.add(this.titles[target]);
+            }
+        }
+
+        return results;
+    }
+
+    @Override
+    public List<String> whatLinksHere(String title) {
+        waitForLatency();
+        return backlinksOf(title);
+    }
+
+    @Override
+    public Map<String, List<String>> getLinksToPages(List<String> titles) {
+        Map<String, List<String>> links = new HashMap<>();
+        for (List<String> batch : WikiBackend.batches(titles)) {
+            waitForLatency();
+            for (String title : batch) {
+                links.put(title, backlinksOf(title));
+            }
+        }
+        return links;
+    }
+
+    /**
+     * @param title is not null
+     * @return the titles of the pages that link to the page with the given title
+     */
+    private List<String> backlinksOf(String title) {
+        Integer page = this.index.get(title);
+        List<String> results = new ArrayList<>();
+        if (page == null) {
+            return results;
+        }
+
+        for (int source : this.backlinks[page]) {
+            results.add(this.titles[source]);
+        }
+
+        return results;
+    }
+
+    @Override
+    public List<String> getCategoryMembers(String category) {
+        waitForLatency();
+        int c = categoryIndex(category);
+        List<String> results = new ArrayList<>();
+        if (c < 0) {
+            return results;
+        }
+
+        for (int page : this.members.get(c)) {
+            results.add(this.titles[page]);
+        }
+
+        return results;
+    }
+
+    @Override
+    public List<String> getCategoriesOnPage(String title) {
+        waitForLatency();
+        Integer page = this.index.get(title);
+        List<String> results = new ArrayList<>();
+        if (page == null) {
+            return results;
+        }
+
+        for (int category : this.categories[page]) {
+            if (!results.contains(categoryTitle(category))) {
+                results.add(categoryTitle(category));
+            }
+        }
+
+        return results;
+    }
+
+    @Override
+    public String getLastEditor(String title) {
+        waitForLatency();
+        return editorOf(title);
+    }
+
+    @Override
+    public Map<String, String> getLastEditors(List<String> titles) {
+        Map<String, String> editors = new HashMap<>();
+        for (List<String> batch : WikiBackend.batches(titles)) {
+            waitForLatency();
+            for (String title : batch) {
+                editors.put(title, editorOf(title));
+            }
+        }
+        return editors;
+    }
+
+    @Override
+    public boolean exists(String title) {
+        waitForLatency();
+        return existsQuietly(title);
+    }
+
+    @Override
+    public Map<String, Boolean> pagesExist(List<String> titles) {
+        Map<String, Boolean> exist = new HashMap<>();
+        for (List<String> batch : WikiBackend.batches(titles)) {
+            waitForLatency();
+            for (String title : batch) {
+                exist.put(title, existsQuietly(title));
+            }
+        }
+        return exist;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return this.calls.get();
+    }
+
+    /**
+     * @param title is not null
+     * @return the last editor of the page with the given title, or null if there is none
+     */
+    private String editorOf(String title) {
+        Integer page = this.index.get(title);
+        if (page == null) {
+            return null;
+        }
+
+        return "Editor " + this.editors[page];
+    }
+
+    /**
+     * @param title is not null
+     * @return true if a page or category with the given title exists
+     */
+    private boolean existsQuietly(String title) {
+        return this.index.containsKey(title) || categoryIndex(title) >= 0;
+    }
+
+    /**
+     * Counts a request and waits for latencyMillis. If the thread is interrupted it stops
+     * waiting and keeps its interrupt status.
+     */
+    private void waitForLatency() {
+        this.calls.incrementAndGet();
+        if (this.latencyMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(this.latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @param category >= 0 the index of a category
+     * @return the title of the category
+     */
+    private static String categoryTitle(int category) {
+        return CATEGORY_PREFIX + "Group " + category;
+    }
+
+    /**
+     * @param title is not null
+     * @return the index of the category with the given title, or -1 if there is none
+     */
+    private int categoryIndex(String title) {
+        String prefix = CATEGORY_PREFIX + "Group ";
+        if (!title.startsWith(prefix)) {
+            return -1;
+        }
+
+        try {
+            int c = Integer.parseInt(title.substring(prefix.length()));
+            return c >= 0 && c < this.members.size() ? c : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class Timeline implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /* the number of times a new timeline has room for before it grows */
+    private static final int INITIAL_CAPACITY = 2;
+
+    /*
+    RI: retention >= 0, resolution > 0, times is not null and its length is > 0,
+        0 <= head < times.length, 0 <= retained <= times.length, 0 <= buckets,
+        0 <= firstBucket.
+        bucketStarts and bucketCounts are null if buckets is 0, otherwise they have the same
+            length >= firstBucket + buckets, their starts from firstBucket to
+            firstBucket + buckets - 1 are multiples of resolution in increasing order and their
+            counts there are > 0.
+        size is at least retained plus the sum of those counts, last is the last time added
+            if size > 0.
+     */
+
+    /*
+    AF(t) = the times something happened, in milliseconds since 1970-01-01T00:00, in the order
+        they were added. The retained times times[(head + i) % times.length] for
+        0 <= i < retained are kept to the millisecond. Times more than retention before the
+        last time added have been rolled up: only the number bucketCounts[b] of times in the
+        resolution milliseconds from bucketStarts[b] is kept, for
+        firstBucket <= b < firstBucket + buckets. Buckets that have passed a horizon have
+        been dropped, and their times are only counted in size.
+     */
+
+    /*
+    Thread Safety Arguments:
+        Timeline is not thread safe. The WikiMediator that owns a timeline only uses it while
+        holding its own lock.
+     */
+
+    private final long retention;
+    private final long resolution;
+    private long[] times;
+    private int head;
+    private int retained;
+    private long[] bucketStarts;
+    private long[] bucketCounts;
+    private int firstBucket;
+    private int buckets;
+    private long size;
+    private long last;
+
+    /**
+     * Creates a timeline with no times.
+     * @param retention >= 0 the time, in milliseconds, before the last time added that times
+     *                  are kept to the millisecond
+     * @param resolution > 0 the width, in milliseconds, of the buckets older times are
+     *                   counted in
+     */
+    Timeline(long retention, long resolution) {
+        this.retention = retention;
+        this.resolution = resolution;
+        this.times = new long[INITIAL_CAPACITY];
+        this.head = 0;
+        this.retained = 0;
+        this.bucketStarts = null;
+        this.bucketCounts = null;
+        this.firstBucket = 0;
+        this.buckets = 0;
+        this.size = 0;
+        this.last = 0;
+    }
+
+    /**
+     * Adds a time, rolling up the times that are now more than retention before it, in
+     * amortized constant time.
+     * @param time is not null and is not before the times already added, or only by less
+     *             than the retention
+     */
+    void add(LocalDateTime time) {
+        long millis = toMillis(time);
+        rollUpBefore(millis - this.retention);
+
+        if (this.retained == this.times.length) {
+            long[] grown = new long[this.times.length * 2];
+            for (int i = 0; i < this.retained; i++) {
+                grown[i] = this.times[(this.head + i) % this.times.length];
+            }
+            this.times = grown;
+            this.head = 0;
+        }
+        this.times[(this.head + this.retained) % this.times.length] = millis;
+        this.retained++;
+        this.size++;
+        this.last = millis;
+    }
+
+    /**
+     * Rolls up the times that are more than retention before a time, and drops the buckets
+     * that end more than horizon before it, in amortized constant time. Unlike add, this
+     * measures retention from a time that need not have been added, such as the current time.
+     * @param now is not null and is not before the last time added
+     * @param horizon >= retention the time, in milliseconds, before now that buckets are kept
+     */
+    void expire(LocalDateTime now, long horizon) {
+        long millis = toMillis(now);
+        rollUpBefore(millis - this.retention);
+
+        while (this.buckets > 0
+                && this.bucketStarts[this.firstBucket] + this.resolution <= millis - horizon) {
+            this.firstBucket++;
+            this.buckets--;
+        }
+        if (this.buckets == 0) {
+            this.bucketStarts = null;
+            this.bucketCounts = null;
+            this.firstBucket = 0;
+        }
+    }
+
+    /**
+     * @return the number of times added, including times in buckets that have been dropped
+     */
+    long size() {
+        return this.size;
+    }
+
+    /**
+     * @return true if no time is kept, to the millisecond or in a bucket, false otherwise
+     */
+    boolean isEmpty() {
+        return this.retained == 0 && this.buckets == 0;
+    }
+
+    /**
+     * @return the last time added, or null if there is none
+     */
+    LocalDateTime last() {
+        return this.size == 0 ? null : fromMillis(this.last);
+    }
+
+    /**
+     * @return the times added that have not been rolled up, to the millisecond, in the order
+     * they were added. These include every time within retention of the last time added.
+     */
+    List<LocalDateTime> retained() {
+        List<LocalDateTime> retained = new ArrayList<>(this.retained);
+        for (int i = 0; i < this.retained; i++) {
+            retained.add(fromMillis(this.times[(this.head + i) % this.times.length]));
+        }
+        return retained;
+    }
+
+    /**
+     * @return a map from the start of every bucket that times have been rolled up into to the
+     * number of times in it, oldest first
+     */
+    Map<LocalDateTime, Long> rolledUp() {
+        Map<LocalDateTime, Long> rolledUp = new LinkedHashMap<>();
+        for (int b = this.firstBucket; b < this.firstBucket + this.buckets; b++) {
+            rolledUp.put(fromMillis(this.bucketStarts[b]), this.bucketCounts[b]);
+        }
+        return rolledUp;
+    }
+
+    /**
+     * Rolls up the retained times before a time.
+     * @param millis a time in milliseconds since 1970-01-01T00:00
+     */
+    private void rollUpBefore(long millis) {
+        while (this.retained > 0 && this.times[this.head] < millis) {
+            rollUp(this.times[this.head]);
+            this.head = (this.head + 1) % this.times.length;
+            this.retained--;
+        }
+    }
+
+    /**
+     * Counts a time in the bucket it falls in, or in the newest bucket if that starts after
+     * the time.
+     * @param millis a time that is no longer retained
+     */
+    private void rollUp(long millis) {
+        long start = Math.floorDiv(millis, this.resolution) * this.resolution;
+        int newest = this.firstBucket + this.buckets - 1;
+        if (this.buckets > 0 && start <= this.bucketStarts[newest]) {
+            this.bucketCounts[newest]++;
+            return;
+        }
+
+        if (this.bucketStarts == null) {
+            this.bucketStarts = new long[INITIAL_CAPACITY];
+            this.bucketCounts = new long[INITIAL_CAPACITY];
+        } else if (this.firstBucket + this.buckets == this.bucketStarts.length) {
+            // buckets dropped from the front make room, otherwise the arrays grow
+            int length = this.buckets * 2 > this.bucketStarts.length
+                    ? this.buckets * 2 : this.bucketStarts.length;
+            long[] starts = new long[length];
+            long[] counts = new long[length];
+            System.arraycopy(this.bucketStarts, this.firstBucket, starts, 0, this.buckets);
+            System.arraycopy(this.bucketCounts, this.firstBucket, counts, 0, this.buckets);
+            this.bucketStarts = starts;
+            this.bucketCounts = counts;
+            this.firstBucket = 0;
+        }
+        this.bucketStarts[this.firstBucket + this.buckets] = start;
+        this.bucketCounts[this.firstBucket + this.buckets] = 1;
+        this.buckets++;
+    }
+
+    /**
+     * @param time is not null
+     * @return time in milliseconds since 1970-01-01T00:00
+     */
+    private static long toMillis(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1000 + time.getNano() / 1_000_000;
+    }
+
+    /**
+     * @param millis a time in milliseconds since 1970-01-01T00:00
+     * @return that time
+     */
+    private static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+                Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+}
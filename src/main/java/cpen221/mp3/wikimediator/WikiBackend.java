@@ -0,0 +1,167 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+public interface WikiBackend {
+
+    /*
+        The wiki a WikiMediator sends its requests to. Implementations must be thread safe,
+        as a WikiMediator calls them from every thread serving a request.
+        The batch methods let a caller look up many titles at once. By default they make one
+        request per title, implementations that can answer several titles in one request
+        override them.
+     */
+
+    /* the most titles the MediaWiki API accepts in one request */
+    int BATCH_SIZE = 50;
+
+    /**
+     * Searches the wiki for pages matching a query.
+     * @param query is not null
+     * @param limit >= 0 the largest number of titles to return
+     * @return the titles of at most limit pages matching query, best match first
+     */
+    List<String> search(String query, int limit);
+
+    /**
+     * @param title is not null
+     * @return the text of the page with the given title, or an empty string if there is
+     * no such page
+     */
+    String getPageText(String title);
+
+    /**
+     * @param title is not null
+     * @return the titles of the pages that the page with the given title links to, or an
+     * empty list if there is no such page
+     */
+    List<String> getLinksOnPage(String title);
+
+    /**
+     * @param title is not null
+     * @return the titles of the pages that link to the page with the given title, or an
+     * empty list if there is no such page
+     */
+    List<String> whatLinksHere(String title);
+
+    /**
+     * @param category is not null and is the title of a category page, such as
+     *                 "Category:Hockey"
+     * @return the titles of the pages in the category, or an empty list if there is no
+     * such category
+     */
+    List<String> getCategoryMembers(String category);
+
+    /**
+     * @param title is not null
+     * @return the titles of the categories the page with the given title is in, or an
+     * empty list if there is no such page
+     */
+    List<String> getCategoriesOnPage(String title);
+
+    /**
+     * @param title is not null
+     * @return the name of the last user to edit the page with the given title, or null if
+     * there is no such page
+     */
+    String getLastEditor(String title);
+
+    /**
+     * @param title is not null
+     * @return true if a page with the given title exists, false otherwise
+     */
+    boolean exists(String title);
+
+    /**
+     * @return the number of requests sent to the wiki so far. A batch request for up to
+     * BATCH_SIZE titles counts as one request.
+     */
+    long getRequestCount();
+
+    /**
+     * Looks up the links on several pages.
+     * @param titles is not null and contains no nulls
+     * @return a map from every title in titles to getLinksOnPage of that title
+     */
+    default Map<String, List<String>> getLinksOnPages(List<String> titles) {
+        Map<String, List<String>> links = new HashMap<>();
+        for (String title : titles) {
+            if (!links.containsKey(title)) {
+                links.put(title, getLinksOnPage(title));
+            }
+        }
+        return links;
+    }
+
+    /**
+     * Looks up the pages that link to several pages.
+     * @param titles is not null and contains no nulls
+     * @return a map from every title in titles to whatLinksHere of that title
+     */
+    default Map<String, List<String>> getLinksToPages(List<String> titles) {
+        Map<String, List<String>> links = new HashMap<>();
+        for (String title : titles) {
+            if (!links.containsKey(title)) {
+                links.put(title, whatLinksHere(title));
+            }
+        }
+        return links;
+    }
+
+    /**
+     * Looks up the last editor of several pages.
+     * @param titles is not null and contains no nulls
+     * @return a map from every title in titles to getLastEditor of that title
+     */
+    default Map<String, String> getLastEditors(List<String> titles) {
+        Map<String, String> editors = new HashMap<>();
+        for (String title : titles) {
+            if (!editors.containsKey(title)) {
+                editors.put(title, getLastEditor(title));
+            }
+        }
+        return editors;
+    }
+
+    /**
+     * Checks whether several pages exist.
+     * @param titles is not null and contains no nulls
+     * @return a map from every title in titles to exists of that title
+     */
+    default Map<String, Boolean> pagesExist(List<String> titles) {
+        Map<String, Boolean> exist = new HashMap<>();
+        for (String title : titles) {
+            if (!exist.containsKey(title)) {
+                exist.put(title, exists(title));
+            }
+        }
+        return exist;
+    }
+
+    /**
+     * Splits titles into batches of at most BATCH_SIZE distinct titles.
+     * @param titles is not null
+     * @return the distinct titles of titles, in order, split into lists of at most
+     * BATCH_SIZE titles
+     */
+    static List<List<String>> batches(List<String> titles) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        for (String title : new LinkedHashSet<>(titles)) {
+            if (batch.size() == BATCH_SIZE) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+            batch.add(title);
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+}
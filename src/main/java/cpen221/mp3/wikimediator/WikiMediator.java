@@ -1,15 +1,26 @@
 package cpen221.mp3.wikimediator;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.HashMap;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.Stack;
 
 import org.antlr.v4.runtime.ANTLRInputStream;
@@ -23,28 +34,77 @@ import java.io.ObjectOutputStream;
 import java.io.FileOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.File;
 
 import cpen221.mp3.cache.Cache;
+import cpen221.mp3.cache.CacheLoader;
 import cpen221.mp3.cache.CacheObject;
+import cpen221.mp3.cache.CacheStats;
+import cpen221.mp3.cache.CompressedCacheObject;
+import cpen221.mp3.cache.DiskCache;
+import cpen221.mp3.cache.ExpiringCacheObject;
+import cpen221.mp3.cache.ExpiryScheduler;
 import cpen221.mp3.cache.NotFoundException;
-import fastily.jwiki.core.Wiki;
+import cpen221.mp3.cache.OffHeapCache;
+import cpen221.mp3.cache.TextCacheable;
 
 public class WikiMediator {
     /*
      RI: methodNames is not null and contains all public methods within the WikiMediator Class
-         wiki is not null and is the English domain of Wikipedia
-         cache is not null
-         timeMap is not null. All times in the map must be after this.startTime
+         wiki is not null
+         cache is null if and only if storage is OFF_HEAP, and only holds
+             CompressedCacheObjects if storage is COMPRESSED, otherwise it only holds
+             CacheObjects
+         storage is not null
+         offHeapCache is not null if and only if storage is OFF_HEAP
+         diskCache may be null
+         linkGraph is not null and looks up links on wiki
+         accuracy is not null
+         timeMap is not null. All times in the map must be after this.startTime. timeMap is
+             empty if accuracy is not exact
+         searchSweepSize >= MINSEARCHSWEEP
+         frequencies and recent are not null if and only if accuracy is exact
+         frequencies counts every key of timeMap once for each of its times
+         recent counts every key of timeMap once for each of its times in the last
+             TRENDINGWINDOW seconds
+         approximateFrequencies and approximateRecent are not null if and only if accuracy is
+             not exact, and were made with the epsilon and delta of accuracy
          requestMap is not null. All times in the map must be after this.startTime
+         load is not null and counts every time in requestMap, in seconds since startTime
          startTime is not null
      */
 
     /*
     AF(wm): A mediator between the user and wikipedia such that
             cache is the cache used by the WikiMediator
-            wiki is the instance of wikipedia used by the wikiMediator.
+            storage is how page text is stored in the cache
+            offHeapCache is the cache used for page text instead of cache if storage is OFF_HEAP
+            diskCache is the second cache for page text, kept on disk, that is checked when a
+                page is not in the first cache, or null if there is none
+            linkGraph is the cache of the links on pages, shared by getConnectedPages and
+                getPath
+            wiki is the instance of wikipedia used by the wikiMediator, English Wikipedia
+                unless another WikiBackend was given.
             timeMap is a map of all searches/queries that are made to the times that they were made.
+                Times older than SEARCHRETENTION are only counted per SEARCHROLLUP, and times
+                older than SEARCHHORIZON only in the total count of their search/query.
+                Searches/queries with no times left in SEARCHHORIZON are dropped from timeMap,
+                so they are no longer counted once the stats are loaded from file again.
+            searchSweepSize is the size of timeMap at which the searches/queries are next
+                checked for ones to drop.
+            frequencies is the number of times each search/query in timeMap was made, kept in
+                order of that number so that the most common ones can be read without a scan.
+            recent is the number of times each search/query was made in the last
+                TRENDINGWINDOW seconds, kept in one bucket per second.
+            accuracy is whether every search/query is kept, in timeMap, frequencies and recent,
+                or only approximate counts are kept, in approximateFrequencies and
+                approximateRecent, which use the same memory however many there are.
             requestMap is a map of all method calls to the times that said methods were called.
+                Times older than REQUESTRETENTION are only counted per REQUESTROLLUP, and times
+                older than REQUESTHORIZON are only counted in the total count of their method,
+                so the load loaded from file only holds the last REQUESTHORIZON.
+            load is the number of method calls made in each second since startTime, kept with
+                the largest number made in any PEAKLOADWINDOW seconds in a row.
             methodNames is an array of all non-constructor public methods.
      */
 
@@ -52,13 +112,50 @@ public class WikiMediator {
     Thread Safety Arguments:
        timeMap: every time the timeMap is accessed, it is wrapped into a synchronized block to
        protect the map from being added to or removed. All actions of the timeMap are atomic
-       since we use a concurrent hashMap which prevents certain data races.
+       since we use a concurrent hashMap which prevents certain data races. The timelines in it
+       are not thread safe, and are only read or changed while holding the lock of the
+       WikiMediator.
+
+       frequencies: is only read or changed while holding the lock of the WikiMediator, in
+       addToMap, zeitgeist and loadStatsFromFile
+
+       recent: is only read or changed while holding the lock of the WikiMediator, in
+       addToMap, trending and loadStatsFromFile
+
+       approximateFrequencies and approximateRecent: are only read or changed while holding the
+       lock of the WikiMediator, in addToMap, zeitgeist, trending and loadStatsFromFile
+
+       accuracy: is final and immutable, thus is thread safe
+
+       searchSweepSize: is only read or changed while holding the lock of the WikiMediator, in
+       addToMap
+
+       load: is only read or changed while holding the lock of the WikiMediator, in
+       recordRequest, peakLoad30s, loadRequestsFromFile and loadStartTimeFromFile
 
        requestMap: every time the request map is accessed, it is wrapped into a synchronized block
        to protect the map from being added to or removed while being read. All actions of the
        timeMap are atomic since we use a concurrent hashMap which prevents certain data races.
+       The timelines in it are only read or changed while holding the lock of the WikiMediator.
+
+       wiki: is final and WikiBackend implementations are thread safe
+
+       cache: is never changed, only accessed and is made thread safe in the cache class. It is
+       null, and never accessed, if storage is OFF_HEAP
+
+       REFRESHER: is final and is a thread safe executor, only used by the caches
+
+       EXPANDER: is final and is a thread safe executor, only used by getConnectedPages and
+       getPath
+
+       storage: is final and immutable, thus is thread safe
+
+       offHeapCache: is final, never changed and is made thread safe in the OffHeapCache class
+
+       diskCache: is final, never changed and is made thread safe in the DiskCache class
+
+       linkGraph: is final, never changed and is made thread safe in the LinkGraph class
 
-       cache: is never changed, only accessed and is made thread safe in the cache class
        startTime: is never edited, thus no need to be synchronized as it is only read from
 
        methodNames: are never edited, thus no need to be synchronized as they are only read from
@@ -83,30 +180,29 @@ public class WikiMediator {
        safe and thus should return the right value.
 
        getConnectedHops: this method is thread safe because we use synchronized blocks around the
-       section that accesses the requestMap. Since each thread will have its own function call
-       stack, the recursive helper is also thread-safe since each thread will have it's own call
-       stack and local variables.
+       section that accesses the requestMap. The visited set and frontier are local variables,
+       so each call searches with its own. The threads that expand one level together only
+       share the visited set and the next level, which are a concurrent set and queue, and
+       the call waits for all of them before it reads the next level.
 
        zeitgeist: this method is thread safe because we use synchronized blocks around the sections
-       that access the timeMap. Furthermore, while iterating over the timeMap, this section
-       is a critical section and thus is wrapped in a synchronized block. The variables within
-       the zeitgeist method themselves are threadsafe since each thread will have it's own local
-       function variables.
+       that access the requestMap and frequencies, so frequencies can not change while the most
+       common searches are read from it. The list it returns is a new local list.
 
        trending: this method is thread safe because we use synchronized blocks around the sections
-       that access the timeMap. Furthermore, while iterating over the timeMap, this section
-       is a critical section and thus is wrapped in a synchronized block to prevent other
-       methods from writing to the map. The variables within the trending method are thread safe
-       since each thread will have it's own local function variables.
+       that access the requestMap and recent, so recent can not change while the most common
+       recent searches are read from it. The list it returns is a new local list.
 
-       peakLoad30s: this method is thread safe because we use synchronized blocks around the
-       sections that access the requestMap. Furthermore, while iterating over the intervals,
-       this section is wrapped in a synchronized block and thus allows us to gain stats safely.
-       The variables within the peakLoad30s are thread safe since they are local variables.
+       peakLoad30s: this method is thread safe because recordRequest is synchronized and the
+       peak is read from load in a synchronized block, so no request can be counted while it
+       is read.
 
        getPath: this method is thread safe because we use synchronized blocks around the section
        that accesses the requestMap. Furthermore, the remaining variables used within the
-       method are local variables and are threadsafe types, thus are thread safe.
+       method are local variables and are threadsafe types, thus are thread safe. The threads
+       that expand one level together share the parent maps, the next level and the meeting
+       page, which are concurrent maps, a concurrent queue and an atomic reference, and the
+       call waits for all of them before it reads the next level.
 
        executeQuery: this method is thread safe because we use synchronized blocks are the
        section that accesses the requestMap. Furthermore, any variables or methods called
@@ -116,23 +212,126 @@ public class WikiMediator {
        parse: this method is thread safe because we don't access any of the wikiMediator variables
      */
 
-    /* Default Cache Capacity */
-    private static final int DEFAULTCAPACITY = 256;
+    /* Default Cache Capacity, in bytes of page text */
+    private static final long DEFAULTMAXWEIGHT = 64L * 1024 * 1024;
 
     /* Default Cache Expiry Time */
     private static final int DEFAULTTIMEOUT = 43200;
 
+    /* Default time before expiry, in seconds, during which a requested page is refetched */
+    private static final int DEFAULTREFRESHWINDOW = 600;
+
+    /* Fetches pages that are about to expire in the background, shared by all WikiMediators */
+    private static final ExecutorService REFRESHER = Executors.newCachedThreadPool(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "page-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /* The most link lookups one getConnectedPages or getPath call has in flight at once */
+    private static final int PARALLELFETCHES = 8;
+
+    /* Looks up the links of large search levels in parallel, shared by all WikiMediators */
+    private static final ExecutorService EXPANDER = Executors.newFixedThreadPool(
+            WikiMediator.PARALLELFETCHES - 1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "link-fetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /* The number of seconds of searches and queries trending counts */
+    private static final int TRENDINGWINDOW = 30;
+
+    /* The number of seconds in a row peakLoad30s counts requests over */
+    private static final int PEAKLOADWINDOW = 30;
+
+    /* The time, in milliseconds, the times of searches and queries are kept to the
+       millisecond, before they are only counted per SEARCHROLLUP */
+    private static final long SEARCHRETENTION = WikiMediator.TRENDINGWINDOW * 1000L;
+
+    /* The width, in milliseconds, of the buckets older searches and queries are counted in */
+    private static final long SEARCHROLLUP = 24 * 3600 * 1000L;
+
+    /* The time, in milliseconds, the buckets of searches and queries are kept, before their
+       times are only counted in total */
+    private static final long SEARCHHORIZON = 30 * WikiMediator.SEARCHROLLUP;
+
+    /* The smallest size of timeMap at which it is checked for searches and queries to drop */
+    private static final int MINSEARCHSWEEP = 1024;
+
+    /* The time, in milliseconds, the times of method calls are kept to the millisecond,
+       before they are only counted per REQUESTROLLUP */
+    private static final long REQUESTRETENTION = WikiMediator.PEAKLOADWINDOW * 1000L;
+
+    /* The width, in milliseconds, of the buckets older method calls are counted in, one
+       second so that peakLoad30s can be counted again from them */
+    private static final long REQUESTROLLUP = 1000L;
+
+    /* The time, in milliseconds, the buckets of method calls are kept, before their times
+       are only counted in total */
+    private static final long REQUESTHORIZON = 3600 * 1000L;
+
+    /* Default Link Cache Capacity, in links */
+    private static final int DEFAULTMAXLINKS = 1_000_000;
+
+    /* Default Disk Cache Capacity, in bytes of page records */
+    private static final long DEFAULTDISKBYTES = 512L * 1024 * 1024;
+
+    /* File name of the disk cache of English Wikipedia pages */
+    private static final String PAGESTOREFILE = "local/pageStoreFile";
+
     /* The Wikipedia Instance of the WikiMediator */
-    private Wiki wiki;
+    private final WikiBackend wiki;
 
-    /* The Cache Instance of the WikiMediator */
+    /* The Cache Instance of the WikiMediator, null if storage is OFF_HEAP */
     private Cache cache;
 
+    /* How page text is stored in the cache */
+    private final PageStorage storage;
+
+    /* The cache of page text stored off the heap, null unless storage is OFF_HEAP */
+    private final OffHeapCache offHeapCache;
+
+    /* The cache of page text stored on disk, checked before wikipedia, may be null */
+    private final DiskCache diskCache;
+
+    /* The cache of the links on pages, used by every method that follows links */
+    private final LinkGraph linkGraph;
+
     /* The time map of searches and queries (strings) to the time they were made */
-    private Map<String, List<LocalDateTime>> timeMap;
+    private Map<String, Timeline> timeMap;
+
+    /* The size of timeMap at which it is next checked for searches and queries to drop */
+    private int searchSweepSize = WikiMediator.MINSEARCHSWEEP;
+
+    /* The number of times each search or query in timeMap was made */
+    private FrequencyIndex frequencies;
+
+    /* The number of times each search or query was made in the last TRENDINGWINDOW seconds */
+    private SlidingWindowCounter recent;
+
+    /* Whether searches and queries are counted exactly or approximately */
+    private final StatsAccuracy accuracy;
+
+    /* The approximate number of times each search or query was made */
+    private HeavyHitters approximateFrequencies;
+
+    /* The approximate number of times each search or query was made in the last
+       TRENDINGWINDOW seconds */
+    private ApproximateWindowCounter approximateRecent;
 
     /* The request map of a method to the time the method was called */
-    private Map<String, List<LocalDateTime>> requestMap;
+    private Map<String, Timeline> requestMap;
+
+    /* The number of requests made in each second since startTime */
+    private PeakLoadCounter load;
 
     /* The starting time of the WikiMediator */
     private LocalDateTime startTime;
@@ -150,20 +349,108 @@ public class WikiMediator {
     /**
      * Constructs an instance of the WikiMediator.
      * This constructor creates a new English Wikipedia access, a new default cache object
-     * and creates appropriate maps to store statistics in the WikiMediator
+     * that stores page text uncompressed and creates appropriate maps to store statistics
+     * in the WikiMediator
      *
      */
     public WikiMediator() {
-        this.wiki = new Wiki("en.wikipedia.org");
-        this.wiki.enableLogging(false);
+        this(PageStorage.PLAIN);
+    }
+
+    /**
+     * Constructs an instance of the WikiMediator.
+     * This constructor creates a new English Wikipedia access, a new default cache object
+     * bounded by the total size of the page text it holds and creates appropriate maps to
+     * store statistics in the WikiMediator
+     * @param storage is not null and is how page text is stored in the cache. COMPRESSED lets
+     *                the cache hold several times more pages but makes every cache hit
+     *                decompress the page, OFF_HEAP keeps page text out of the garbage collected
+     *                heap but makes every cache hit copy the page back onto it
+     */
+    public WikiMediator(PageStorage storage) {
+        this(storage, StatsAccuracy.exact());
+    }
+
+    /**
+     * Constructs an instance of the WikiMediator.
+     * This constructor creates a new English Wikipedia access, a new default cache object
+     * bounded by the total size of the page text it holds and creates appropriate maps to
+     * store statistics in the WikiMediator
+     * @param storage is not null and is how page text is stored in the cache
+     * @param accuracy is not null and is how searches are counted for zeitgeist and trending.
+     *                 If it is not exact, zeitgeist and trending use the same memory however
+     *                 many different searches are made, but their counts may be too high and
+     *                 searches are not written by writeStatsToFile
+     */
+    public WikiMediator(PageStorage storage, StatsAccuracy accuracy) {
+        this(new JWikiBackend("en.wikipedia.org"), storage, openDiskCache(PAGESTOREFILE),
+                accuracy);
+    }
+
+    /**
+     * Constructs an instance of the WikiMediator that sends its requests to a given wiki,
+     * for example an in-memory wiki to test or benchmark without the network.
+     * This constructor creates a new default cache object and creates appropriate maps to
+     * store statistics in the WikiMediator. Pages are not cached on disk.
+     * @param wiki is not null and is the wiki the WikiMediator requests pages from
+     * @param storage is not null and is how page text is stored in the cache
+     */
+    public WikiMediator(WikiBackend wiki, PageStorage storage) {
+        this(wiki, storage, StatsAccuracy.exact());
+    }
+
+    /**
+     * Constructs an instance of the WikiMediator that sends its requests to a given wiki and
+     * counts searches with a given accuracy. Pages are not cached on disk.
+     * @param wiki is not null and is the wiki the WikiMediator requests pages from
+     * @param storage is not null and is how page text is stored in the cache
+     * @param accuracy is not null and is how searches are counted for zeitgeist and trending
+     */
+    public WikiMediator(WikiBackend wiki, PageStorage storage, StatsAccuracy accuracy) {
+        this(wiki, storage, null, accuracy);
+    }
+
+    /**
+     * Constructs an instance of the WikiMediator.
+     * @param wiki is not null and is the wiki the WikiMediator requests pages from
+     * @param storage is not null and is how page text is stored in the cache
+     * @param diskCache is the disk cache of pages from wiki, or null
+     * @param accuracy is not null and is how searches are counted for zeitgeist and trending
+     */
+    private WikiMediator(WikiBackend wiki, PageStorage storage, DiskCache diskCache,
+                         StatsAccuracy accuracy) {
+        this.wiki = wiki;
         this.timeMap = new ConcurrentHashMap<>();
+        this.accuracy = accuracy;
+        resetCounts();
         this.requestMap = new ConcurrentHashMap<>();
-        this.cache = new Cache<>(WikiMediator.DEFAULTCAPACITY, WikiMediator.DEFAULTTIMEOUT);
+        this.storage = storage;
+        if (storage == PageStorage.OFF_HEAP) {
+            this.cache = null;
+            this.offHeapCache = new OffHeapCache(WikiMediator.DEFAULTMAXWEIGHT,
+                    WikiMediator.DEFAULTTIMEOUT, true, WikiMediator.DEFAULTREFRESHWINDOW,
+                    WikiMediator.REFRESHER);
+        } else if (storage == PageStorage.COMPRESSED) {
+            this.cache = new Cache<>(WikiMediator.DEFAULTMAXWEIGHT, WikiMediator.DEFAULTTIMEOUT,
+                    CompressedCacheObject.SIZE_WEIGHER, ExpiryScheduler.shared(), true, null,
+                    WikiMediator.DEFAULTREFRESHWINDOW, WikiMediator.REFRESHER);
+            this.offHeapCache = null;
+        } else {
+            this.cache = new Cache<>(WikiMediator.DEFAULTMAXWEIGHT, WikiMediator.DEFAULTTIMEOUT,
+                    CacheObject.TEXT_WEIGHER, ExpiryScheduler.shared(), true, null,
+                    WikiMediator.DEFAULTREFRESHWINDOW, WikiMediator.REFRESHER);
+            this.offHeapCache = null;
+        }
+        this.diskCache = diskCache;
+        this.linkGraph = new LinkGraph(wiki, WikiMediator.DEFAULTMAXLINKS,
+                WikiMediator.DEFAULTTIMEOUT);
         this.startTime = LocalDateTime.now();
+        this.load = new PeakLoadCounter(WikiMediator.PEAKLOADWINDOW);
 
         /* adds the method names into the requestMap */
         for (String name : this.methodNames) {
-            this.requestMap.put(name, Collections.synchronizedList(new ArrayList<>()));
+            this.requestMap.put(name, new Timeline(WikiMediator.REQUESTRETENTION,
+                    WikiMediator.REQUESTROLLUP));
         }
     }
 
@@ -176,16 +463,35 @@ public class WikiMediator {
      *
      */
     public WikiMediator(Cache cache) {
-        this.wiki = new Wiki("en.wikipedia.org");
-        this.wiki.enableLogging(false);
+        this(new JWikiBackend("en.wikipedia.org"), cache);
+    }
+
+    /**
+     * Constructs an instance of the WikiMediator that sends its requests to a given wiki and
+     * uses an existing Cache object, and initializes appropriate maps to store statistics in
+     * the WikiMediator instance
+     * @param wiki is not null and is the wiki the WikiMediator requests pages from
+     * @param cache is not null
+     */
+    public WikiMediator(WikiBackend wiki, Cache cache) {
+        this.wiki = wiki;
         this.timeMap = new ConcurrentHashMap<>();
         this.requestMap = new ConcurrentHashMap<>();
         this.cache = cache;
+        this.storage = PageStorage.PLAIN;
+        this.accuracy = StatsAccuracy.exact();
+        resetCounts();
+        this.offHeapCache = null;
+        this.diskCache = null;
+        this.linkGraph = new LinkGraph(wiki, WikiMediator.DEFAULTMAXLINKS,
+                WikiMediator.DEFAULTTIMEOUT);
         this.startTime = LocalDateTime.now();
+        this.load = new PeakLoadCounter(WikiMediator.PEAKLOADWINDOW);
 
         /* adds the method names into the requestMap */
         for (String name : this.methodNames) {
-            this.requestMap.put(name, Collections.synchronizedList(new ArrayList<>()));
+            this.requestMap.put(name, new Timeline(WikiMediator.REQUESTRETENTION,
+                    WikiMediator.REQUESTROLLUP));
         }
     }
 
@@ -200,11 +506,7 @@ public class WikiMediator {
      * If limit is equal to 0, returns an empty list of strings
      */
     public List<String> simpleSearch(String query, int limit) {
-        synchronized (this) {
-            List<LocalDateTime> requestDates = this.requestMap.get("simpleSearch");
-            requestDates.add(LocalDateTime.now());
-            this.requestMap.replace("simpleSearch", requestDates);
-        }
+        recordRequest("simpleSearch");
 
         addToMap(query);
         List<String> searches = new ArrayList<>();
@@ -227,26 +529,223 @@ public class WikiMediator {
      * If page title is invalid, getPage follows the behaviour of the jWiki API
      */
     public String getPage(String pageTitle) {
-        synchronized (this) {
-            List<LocalDateTime> requestDates = this.requestMap.get("getPage");
-            requestDates.add(LocalDateTime.now());
-            this.requestMap.replace("getPage", requestDates);
-        }
+        recordRequest("getPage");
 
         String text;
         addToMap(pageTitle);
 
+        /* concurrent requests for a page that is not cached share one fetch */
+        if (this.storage == PageStorage.OFF_HEAP) {
+            CacheLoader<CacheObject> offHeapLoader = new CacheLoader<CacheObject>() {
+                private ExpiringCacheObject loaded;
+
+                @Override
+                public CacheObject load(String id) {
+                    this.loaded = loadPage(id);
+                    return this.loaded;
+                }
+
+                @Override
+                public CacheObject reload(String id, CacheObject old) {
+                    // the disk copy is at least as old as the one being refreshed
+                    return new CacheObject(id, fetchPage(id));
+                }
+
+                @Override
+                public long lifetimeNanos(String id, long timeoutNanos) {
+                    // a page read from disk is only kept until its disk copy expires
+                    return this.loaded == null ? timeoutNanos
+                            : this.loaded.lifetimeNanos(timeoutNanos);
+                }
+            };
+
+            try {
+                return this.offHeapCache.get(pageTitle, offHeapLoader).getText();
+            } catch (NotFoundException e) {
+                // loader always returns a page, jWiki gives empty text for pages that do not exist
+                throw new IllegalStateException(e);
+            }
+        }
+
+        CacheLoader<TextCacheable> loader = new CacheLoader<TextCacheable>() {
+            private ExpiringCacheObject loaded;
+
+            @Override
+            public TextCacheable load(String id) {
+                this.loaded = loadPage(id);
+                return toCacheable(id, this.loaded.getText());
+            }
+
+            @Override
+            public TextCacheable reload(String id, TextCacheable old) {
+                // the disk copy is at least as old as the one being refreshed
+                return toCacheable(id, fetchPage(id));
+            }
+
+            @Override
+            public long lifetimeNanos(String id, long timeoutNanos) {
+                // a page read from disk is only kept until its disk copy expires
+                return this.loaded == null ? timeoutNanos
+                        : this.loaded.lifetimeNanos(timeoutNanos);
+            }
+        };
+
         try {
-            CacheObject co = (CacheObject) this.cache.get(pageTitle);
+            TextCacheable co = (TextCacheable) this.cache.get(pageTitle, loader);
             text = co.getText();
         } catch (NotFoundException e) {
-            text = this.wiki.getPageText(pageTitle);
-            this.cache.put(new CacheObject(pageTitle, text));
+            // loader always returns a page, jWiki gives empty text for pages that do not exist
+            throw new IllegalStateException(e);
         }
 
         return text;
     }
 
+    /**
+     * Returns the hits, misses, puts, removals and load times of the page cache, which show
+     * how well the cache capacity fits the pages being requested. This is not a wikipedia
+     * request, so it is not recorded in the request map.
+     * @return a snapshot of the statistics of the cache used by getPage
+     */
+    public CacheStats cacheStats() {
+        if (this.storage == PageStorage.OFF_HEAP) {
+            return this.offHeapCache.stats();
+        }
+        return this.cache.stats();
+    }
+
+    /**
+     * Helper method to make the object the cache holds for a page
+     * @param pageTitle is not null and is the title of the page
+     * @param text is the text of the page
+     * @return the page, compressed if storage is COMPRESSED
+     */
+    private TextCacheable toCacheable(String pageTitle, String text) {
+        if (this.storage == PageStorage.COMPRESSED) {
+            return new CompressedCacheObject(pageTitle, text);
+        }
+        return new CacheObject(pageTitle, text);
+    }
+
+    /**
+     * Helper method to get a page that is not in the cache. The page is read from the disk
+     * cache if it holds the page, otherwise it is fetched from wikipedia.
+     * @param pageTitle is not null and is the title of the page
+     * @return the page, which expires when its copy in the disk cache does, or after the
+     * cache timeout if it was fetched
+     */
+    private ExpiringCacheObject loadPage(String pageTitle) {
+        if (this.diskCache != null) {
+            try {
+                return this.diskCache.get(pageTitle);
+            } catch (NotFoundException e) {
+                // only pages that were fetched before are on disk
+            }
+        }
+        String text = fetchPage(pageTitle);
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(WikiMediator.DEFAULTTIMEOUT);
+        return new ExpiringCacheObject(pageTitle, text, System.currentTimeMillis() + timeoutMillis);
+    }
+
+    /**
+     * Helper method to fetch the text of a page from wikipedia, skipping the disk cache. The
+     * text is written to the disk cache, replacing any older copy, so that it can be read back
+     * after it leaves the cache or after a restart.
+     * @param pageTitle is not null and is the title of the page
+     * @return the text of the page
+     */
+    private String fetchPage(String pageTitle) {
+        String text = this.wiki.getPageText(pageTitle);
+        if (this.diskCache != null) {
+            this.diskCache.replace(new CacheObject(pageTitle, text));
+        }
+        return text;
+    }
+
+    /**
+     * Helper method to open the disk cache of the WikiMediator
+     * @param fileName is not null and is the file holding the disk cache
+     * @return the disk cache, or null if the file can not be opened
+     */
+    private static DiskCache openDiskCache(String fileName) {
+        try {
+            return DiskCache.open(new File(fileName), WikiMediator.DEFAULTDISKBYTES,
+                    WikiMediator.DEFAULTTIMEOUT);
+        } catch (IOException e) {
+            System.out.println("Could not load file");
+            return null;
+        }
+    }
+
+    /**
+     * Records that a method was called now.
+     * Method is synchronized so only one thread can add to the request map at the same time
+     * @param method is not null and is the name of a public method
+     * @modifies requestMap, adds the current time to the times method was called, and load
+     */
+    private synchronized void recordRequest(String method) {
+        LocalDateTime now = LocalDateTime.now();
+        this.requestMap.get(method).add(now);
+        expireRequests(now);
+        this.load.increment(secondsSinceStart(now));
+    }
+
+    /**
+     * Rolls up and drops the times in requestMap that have passed REQUESTRETENTION and
+     * REQUESTHORIZON. There is one timeline per method, so this takes amortized constant time.
+     * @param now is not null and is the current time
+     * @modifies requestMap
+     */
+    private void expireRequests(LocalDateTime now) {
+        for (Timeline times : this.requestMap.values()) {
+            times.expire(now, WikiMediator.REQUESTHORIZON);
+        }
+    }
+
+    /**
+     * Rolls up and drops the times in timeMap that have passed SEARCHRETENTION and
+     * SEARCHHORIZON, and removes the searches and queries with no times left.
+     * @param now is not null and is the current time
+     * @modifies timeMap
+     */
+    private void expireSearches(LocalDateTime now) {
+        Iterator<Timeline> timelines = this.timeMap.values().iterator();
+        while (timelines.hasNext()) {
+            Timeline times = timelines.next();
+            times.expire(now, WikiMediator.SEARCHHORIZON);
+            if (times.isEmpty()) {
+                timelines.remove();
+            }
+        }
+    }
+
+    /**
+     * @param time is not null
+     * @return the number of whole seconds from startTime to time
+     */
+    private long secondsSinceStart(LocalDateTime time) {
+        return Duration.between(this.startTime, time).getSeconds();
+    }
+
+    /**
+     * Counts every request in requestMap again, from startTime.
+     * @modifies load
+     */
+    private void reloadLoad() {
+        Map<Long, Integer> seconds = new HashMap<>();
+        for (Timeline times : this.requestMap.values()) {
+            for (Map.Entry<LocalDateTime, Long> bucket : times.rolledUp().entrySet()) {
+                seconds.merge(secondsSinceStart(bucket.getKey()),
+                        (int) (long) bucket.getValue(), Integer::sum);
+            }
+            for (LocalDateTime time : times.retained()) {
+                seconds.merge(secondsSinceStart(time), 1, Integer::sum);
+            }
+        }
+
+        this.load = PeakLoadCounter.of(WikiMediator.PEAKLOADWINDOW, seconds);
+    }
+
     /**
      * Helper method to add a string request to the instance time map.
      * Method is synchronized so only one thread can access and add to map at the same time
@@ -256,18 +755,58 @@ public class WikiMediator {
      *                    string has been used
      */
     private synchronized void addToMap(String request) {
+        if (!this.accuracy.isExact()) {
+            this.approximateFrequencies.increment(request);
+            this.approximateRecent.increment(request, currentSecond());
+            return;
+        }
 
+        LocalDateTime now = LocalDateTime.now();
         if (!this.timeMap.containsKey(request)) {
-            List<LocalDateTime> timeList = Collections.synchronizedList(new ArrayList<>());
-            timeList.add(LocalDateTime.now());
-            this.timeMap.put(request, timeList);
+            this.timeMap.put(request, new Timeline(WikiMediator.SEARCHRETENTION,
+                    WikiMediator.SEARCHROLLUP));
+        }
+        this.timeMap.get(request).add(now);
+        this.frequencies.increment(request);
+        this.recent.increment(request, currentSecond());
+
+        /* checking again only once timeMap doubles keeps this amortized constant time */
+        if (this.timeMap.size() >= this.searchSweepSize) {
+            expireSearches(now);
+            this.searchSweepSize = Math.max(WikiMediator.MINSEARCHSWEEP,
+                    2 * this.timeMap.size());
+        }
+    }
+
+    /**
+     * Replaces the counts of searches and queries with empty ones, exact or approximate
+     * according to accuracy.
+     * @modifies frequencies, recent, approximateFrequencies and approximateRecent
+     */
+    private void resetCounts() {
+        if (this.accuracy.isExact()) {
+            this.frequencies = new FrequencyIndex();
+            this.recent = new SlidingWindowCounter(WikiMediator.TRENDINGWINDOW);
+            this.approximateFrequencies = null;
+            this.approximateRecent = null;
         } else {
-            List<LocalDateTime> timeList = this.timeMap.get(request);
-            timeList.add(LocalDateTime.now());
-            this.timeMap.replace(request, timeList);
+            this.frequencies = null;
+            this.recent = null;
+            this.approximateFrequencies = new HeavyHitters(this.accuracy.epsilon(),
+                    this.accuracy.delta());
+            this.approximateRecent = new ApproximateWindowCounter(WikiMediator.TRENDINGWINDOW,
+                    this.accuracy.epsilon(), this.accuracy.delta());
         }
     }
 
+    /**
+     * @return the current second of a clock that only moves forward, for counting searches
+     * and queries in recent
+     */
+    private static long currentSecond() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+
     /**
      * Find a list of pages that are connected to the given page in a certain number of hops
      * @param pageTitle is not null and is the starting page
@@ -279,52 +818,106 @@ public class WikiMediator {
      * be found through links from the initial pageTitle
      */
     public List<String> getConnectedPages(String pageTitle, int hops) {
-        synchronized (this) {
-            List<LocalDateTime> requestDates = this.requestMap.get("getConnectedPages");
-            requestDates.add(LocalDateTime.now());
-            this.requestMap.replace("getConnectedPages", requestDates);
-        }
-
-        Set<String> pageLinks = new HashSet<>();
-        pageLinks.add(pageTitle);
+        return getConnectedPages(pageTitle, hops, Deadline.none());
+    }
 
-        if (hops == 0) {
-            return new ArrayList<>(pageLinks);
-        } else {
-            pageLinks.addAll(getConnectedPagesHelper(pageTitle, hops));
+    /**
+     * Find a list of pages that are connected to the given page in a certain number of hops,
+     * stopping when a deadline expires
+     * @param pageTitle is not null and is the starting page
+     * @param hops >= 0 and is the number of links that we jump through
+     * @param deadline is not null, no more links are looked up once it expires
+     * @modifies requestMap, adds a time the method was called into the request map
+     * (under "getConnectedPages" key)
+     * @return A list of pages that are reachable within a certain number of hops from pageTitle,
+     * as getConnectedPages(pageTitle, hops)
+     * @throws DeadlineExceededException if deadline expires before the search is done
+     */
+    public List<String> getConnectedPages(String pageTitle, int hops, Deadline deadline) {
+        recordRequest("getConnectedPages");
+
+        // breadth first search one level at a time, each page is expanded at most once
+        Set<String> visited = ConcurrentHashMap.newKeySet();
+        visited.add(pageTitle);
+        List<String> frontier = Collections.singletonList(pageTitle);
+
+        for (int hop = 0; hop < hops && !frontier.isEmpty(); hop++) {
+            frontier = expand(frontier, visited, deadline);
+            if (deadline.isExpired()) {
+                throw new DeadlineExceededException();
+            }
         }
 
-        ArrayList<String> connectedPages = new ArrayList<>(pageLinks);
+        ArrayList<String> connectedPages = new ArrayList<>(visited);
         Collections.sort(connectedPages);
 
         return connectedPages;
     }
 
     /**
-     * Recursive Helper method for getConnectedPages
-     * Base Case is if hops <=0, returns a list of just the current page title
-     * otherwise subtracts 1 from hops and calls helper again for each link in the list
-     * @param pageTitle is not null and is the initial page we are starting from
-     * @param hops >= 0 and is the number of links to jump through
-     * @return a list of pages that can be found within a certain number of hops
-     * starting from pageTitle
+     * Helper method for getConnectedPages
+     * Looks up the links on every page of one level of the search. A level of more than one
+     * batch of pages is split by batch between the calling thread and up to
+     * PARALLELFETCHES - 1 threads of EXPANDER, so that batches wait on the wiki at the same
+     * time instead of one after the other.
+     * @param frontier is not null and holds the pages of the current level, with no duplicates
+     * @param visited is not null, thread safe and holds every page found so far. The pages
+     *                found on this level are added to it.
+     * @param deadline is not null, no batch is looked up once it expires
+     * @return the pages linked to from frontier that were not in visited, in no set order
      */
-    private List<String> getConnectedPagesHelper(String pageTitle, int hops) {
-        List<String> allPages = new ArrayList<>();
-        List<String> titleOnly = new ArrayList<>();
+    private List<String> expand(List<String> frontier, final Set<String> visited,
+                                final Deadline deadline) {
+        final List<List<String>> batches = WikiBackend.batches(frontier);
+        final Queue<String> nextLevel = new ConcurrentLinkedQueue<>();
+        final AtomicInteger nextBatch = new AtomicInteger();
+
+        inParallel(new Runnable() {
+            @Override
+            public void run() {
+                int batch = nextBatch.getAndIncrement();
+                while (batch < batches.size() && !deadline.isExpired()) {
+                    List<String> titles = batches.get(batch);
+                    Map<String, List<String>> linksOnPages = linkGraph.getLinks(titles);
+                    for (String title : titles) {
+                        for (String link : linksOnPages.get(title)) {
+                            if (visited.add(link)) {
+                                nextLevel.add(link);
+                            }
+                        }
+                    }
+                    batch = nextBatch.getAndIncrement();
+                }
+            }
+        }, batches.size());
 
-        if (hops <= 0) {
-            titleOnly.add(pageTitle);
-            return titleOnly;
-        }
+        return new ArrayList<>(nextLevel);
+    }
 
-        allPages.addAll(this.wiki.getLinksOnPage(pageTitle));
-        hops--;
-        for (String title : this.wiki.getLinksOnPage(pageTitle)) {
-            allPages.addAll(getConnectedPagesHelper(title, hops));
+    /**
+     * Runs a worker on the calling thread and on up to PARALLELFETCHES - 1 threads of
+     * EXPANDER at the same time, and waits for all of them to finish.
+     * @param worker is not null, is thread safe and returns once there is no work left
+     * @param batches >= 0 the number of batches the workers share, no more workers than
+     *                batches are run
+     */
+    private static void inParallel(Runnable worker, int batches) {
+        List<CompletableFuture<Void>> helpers = new ArrayList<>();
+        for (int i = 1; i < Math.min(WikiMediator.PARALLELFETCHES, batches); i++) {
+            helpers.add(CompletableFuture.runAsync(worker, WikiMediator.EXPANDER));
+        }
+        worker.run();
+
+        for (CompletableFuture<Void> helper : helpers) {
+            try {
+                helper.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
         }
-
-        return allPages;
     }
 
     /**
@@ -338,43 +931,14 @@ public class WikiMediator {
      * If limit = 0, returns an empty list of strings
      */
     public List<String> zeitgeist(int limit) {
-        synchronized (this) {
-            List<LocalDateTime> requestDates = this.requestMap.get("zeitgeist");
-            requestDates.add(LocalDateTime.now());
-            this.requestMap.replace("zeitgeist", requestDates);
-        }
+        recordRequest("zeitgeist");
 
         synchronized (this) {
-            if (this.timeMap.keySet().isEmpty()) {
-                return new ArrayList<>();
+            if (!this.accuracy.isExact()) {
+                return this.approximateFrequencies.top(limit);
             }
+            return this.frequencies.top(limit);
         }
-
-        List<String> mostCommon = new ArrayList<>();
-        int maxOccurrences;
-        int count = 0;
-        String mostOccurringSearch = "";
-
-        synchronized (this) {
-            while (count < limit) {
-                maxOccurrences = 0;
-                for (String search : this.timeMap.keySet()) {
-                    if ((this.timeMap.get(search).size() > maxOccurrences)
-                            && !mostCommon.contains(search)) {
-                        maxOccurrences = this.timeMap.get(search).size();
-                        mostOccurringSearch = search;
-                    }
-                }
-                count++;
-                if (!mostCommon.contains(mostOccurringSearch)) {
-                    mostCommon.add(mostOccurringSearch);
-                } else {
-                    break;
-                }
-            }
-        }
-
-        return mostCommon;
     }
 
     /**
@@ -385,62 +949,19 @@ public class WikiMediator {
      * (under "trending" key)
      * @return a list of strings where strings are sorted by the amount of times they have been
      * called by the getPage or simple search method. These strings are sorted into non-increasing
-     * order of appearance.
+     * order of appearance. Strings that appeared the same number of times are ordered by how
+     * long they have been appearing in the past 30 seconds, longest first.
      * If limit = 0, returns an empty list of strings
      */
     public List<String> trending(int limit) {
-        synchronized (this) {
-            List<LocalDateTime> requestDates = this.requestMap.get("trending");
-            requestDates.add(LocalDateTime.now());
-            this.requestMap.replace("trending", requestDates);
-        }
-
-        List<String> trendingList = new ArrayList<>();
-        LocalDateTime currentTime = LocalDateTime.now();
-        Map<String, Integer> frequencyList = new ConcurrentHashMap<>();
+        recordRequest("trending");
 
         synchronized (this) {
-            if (this.timeMap.keySet().isEmpty()) {
-                return new ArrayList<>();
+            if (!this.accuracy.isExact()) {
+                return this.approximateRecent.top(limit, currentSecond());
             }
+            return this.recent.top(limit, currentSecond());
         }
-
-        synchronized (this) {
-            for (String request : this.timeMap.keySet()) {
-                List<LocalDateTime> requestList = this.timeMap.get(request);
-                int count = 0;
-                for (LocalDateTime time : requestList) {
-                    LocalDateTime compareTime = currentTime.minusSeconds(30);
-                    if (time.isAfter(compareTime)) {
-                        count++;
-                    }
-                }
-                frequencyList.put(request, count);
-            }
-        }
-
-        int limitCount = 0;
-        int maxFrequency;
-        String frequencyString = "";
-
-        while (limitCount < limit) {
-            maxFrequency = 0;
-            for (String request : frequencyList.keySet()) {
-                if (frequencyList.get(request) > maxFrequency && !trendingList.contains(request)) {
-                    frequencyString = request;
-                    maxFrequency = frequencyList.get(request);
-                }
-            }
-
-            limitCount++;
-            if (!trendingList.contains(frequencyString)) {
-                trendingList.add(frequencyString);
-            } else {
-                break;
-            }
-        }
-
-        return trendingList;
     }
 
     /**
@@ -454,50 +975,11 @@ public class WikiMediator {
      *
      */
     public int peakLoad30s() {
-        synchronized (this) {
-            List<LocalDateTime> requestDates = this.requestMap.get("peakLoad30s");
-            requestDates.add(LocalDateTime.now());
-            this.requestMap.replace("peakLoad30s", requestDates);
-        }
-
-        LocalDateTime startingTime = this.startTime;
-        LocalDateTime endTime = LocalDateTime.now().minusSeconds(29);
-        int maxLoad = 0;
-        List<Integer> intervalRequestsList = new ArrayList<>();
+        recordRequest("peakLoad30s");
 
         synchronized (this) {
-            if (endTime.isBefore(startingTime)) {
-                for (String request : this.requestMap.keySet()) {
-                    maxLoad += this.requestMap.get(request).size();
-                }
-                return maxLoad;
-            }
+            return this.load.peak();
         }
-
-        synchronized (this) {
-            while (startingTime.isBefore(endTime)) {
-                int intervalRequests = 0;
-                LocalDateTime intervalTime = startingTime.plusSeconds(30);
-                for (String request : this.requestMap.keySet()) {
-                    for (LocalDateTime time : this.requestMap.get(request)) {
-                        if (time.isBefore(intervalTime)
-                                && (time.isAfter(startingTime) || time.isEqual(startingTime))) {
-                            intervalRequests++;
-                        }
-                    }
-                }
-                intervalRequestsList.add(intervalRequests);
-                startingTime = startingTime.plusSeconds(1);
-            }
-        }
-
-        for (int intervalLoads : intervalRequestsList) {
-            if (intervalLoads > maxLoad) {
-                maxLoad = intervalLoads;
-            }
-        }
-
-        return maxLoad;
     }
 
     /* Task 2 */
@@ -508,12 +990,14 @@ public class WikiMediator {
     */
 
     /**
-     * Writes this.timeMap to the localDirectory under the file name "timeMapFile"
+     * Writes this.timeMap to the localDirectory under the file name "timeMapFile". If searches
+     * are counted approximately, timeMap is empty and no searches are written.
      */
     public synchronized void writeStatsToFile() {
         try {
             FileOutputStream fos = new FileOutputStream(this.timeMapFile);
             ObjectOutputStream oos = new ObjectOutputStream(fos);
+            expireSearches(LocalDateTime.now());
             oos.writeObject(this.timeMap);
             oos.writeObject(this.startTime);
             oos.close();
@@ -531,6 +1015,7 @@ public class WikiMediator {
         try {
             FileOutputStream fos = new FileOutputStream(this.requestMapFile);
             ObjectOutputStream oos = new ObjectOutputStream(fos);
+            expireRequests(LocalDateTime.now());
             oos.writeObject(this.requestMap);
             oos.close();
 
@@ -566,6 +1051,7 @@ public class WikiMediator {
             ObjectInputStream ois = new ObjectInputStream(fis);
             this.startTime = (LocalDateTime) ois.readObject();
             ois.close();
+            reloadLoad();
 
         } catch (IOException | ClassNotFoundException e) {
             System.out.println("Could not load file");
@@ -575,14 +1061,30 @@ public class WikiMediator {
 
 
     /**
-     * Loads the requestMap from the localDirectory
+     * Loads the requestMap from the localDirectory. Files that hold lists of times, as written
+     * before times were kept in timelines, are loaded too. Keeps the current requestMap if the
+     * file does not hold a map of times.
      */
     public synchronized void loadRequestsFromFile() {
         try {
             FileInputStream fis = new FileInputStream(this.requestMapFile);
             ObjectInputStream ois = new ObjectInputStream(fis);
-            this.requestMap = (Map) ois.readObject();
+            Map<String, Timeline> requests = toTimelines(ois.readObject(),
+                    WikiMediator.REQUESTRETENTION, WikiMediator.REQUESTROLLUP);
             ois.close();
+            if (requests == null) {
+                System.out.println("Could not load file");
+                return;
+            }
+            for (String name : this.methodNames) {
+                if (!requests.containsKey(name)) {
+                    requests.put(name, new Timeline(WikiMediator.REQUESTRETENTION,
+                            WikiMediator.REQUESTROLLUP));
+                }
+            }
+            this.requestMap = requests;
+            expireRequests(LocalDateTime.now());
+            reloadLoad();
 
         } catch (IOException | ClassNotFoundException e) {
             System.out.println("Could not load file");
@@ -591,14 +1093,31 @@ public class WikiMediator {
     }
 
     /**
-     * Loads the timeMap from the localDirectory
+     * Loads the timeMap from the localDirectory. Files that hold lists of times, as written
+     * before times were kept in timelines, are loaded too. Keeps the current timeMap if the
+     * file does not hold a map of times.
      */
     public synchronized void loadStatsFromFile() {
         try {
             FileInputStream fis = new FileInputStream(this.timeMapFile);
             ObjectInputStream ois = new ObjectInputStream(fis);
-            this.timeMap = (Map) ois.readObject();
+            Map<String, Timeline> times = toTimelines(ois.readObject(),
+                    WikiMediator.SEARCHRETENTION, WikiMediator.SEARCHROLLUP);
             ois.close();
+            if (times == null) {
+                System.out.println("Could not load file");
+                return;
+            }
+            if (this.accuracy.isExact()) {
+                this.timeMap = times;
+                expireSearches(LocalDateTime.now());
+                this.searchSweepSize = Math.max(WikiMediator.MINSEARCHSWEEP,
+                        2 * this.timeMap.size());
+                this.frequencies = FrequencyIndex.of(this.timeMap);
+                this.recent = recentCounts(this.timeMap);
+            } else {
+                loadApproximateCounts(times);
+            }
 
         } catch (IOException | ClassNotFoundException e) {
             System.out.println("Could not load file");
@@ -607,6 +1126,95 @@ public class WikiMediator {
     }
 
 
+    /**
+     * Reads a map of times loaded from a file, in the current format or in the format written
+     * before times were kept in timelines.
+     * @param loaded the object read from the file
+     * @param retention >= 0 the retention of timelines made from lists of times
+     * @param resolution > 0 the resolution of timelines made from lists of times
+     * @return a new map from every String key of loaded whose value is a timeline, or a list
+     * of times, to that timeline or to a new timeline of those times. null if loaded is not
+     * a map.
+     */
+    private static Map<String, Timeline> toTimelines(Object loaded, long retention,
+                                                     long resolution) {
+        if (!(loaded instanceof Map)) {
+            return null;
+        }
+
+        Map<String, Timeline> timelines = new ConcurrentHashMap<>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) loaded).entrySet()) {
+            if (!(entry.getKey() instanceof String)) {
+                continue;
+            }
+            String key = (String) entry.getKey();
+            if (entry.getValue() instanceof Timeline) {
+                timelines.put(key, (Timeline) entry.getValue());
+            } else if (entry.getValue() instanceof List) {
+                List<LocalDateTime> times = new ArrayList<>();
+                for (Object time : (List<?>) entry.getValue()) {
+                    if (time instanceof LocalDateTime) {
+                        times.add((LocalDateTime) time);
+                    }
+                }
+                Collections.sort(times);
+                Timeline timeline = new Timeline(retention, resolution);
+                for (LocalDateTime time : times) {
+                    timeline.add(time);
+                }
+                timelines.put(key, timeline);
+            }
+        }
+        return timelines;
+    }
+
+    /**
+     * Replaces the approximate counts with counts of the searches and queries in times.
+     * @param times is not null and maps each search or query to the times it was made
+     * @modifies approximateFrequencies and approximateRecent
+     */
+    private void loadApproximateCounts(Map<String, Timeline> times) {
+        resetCounts();
+        LocalDateTime now = LocalDateTime.now();
+        long second = currentSecond();
+
+        for (Map.Entry<String, Timeline> entry : times.entrySet()) {
+            for (long i = 0; i < entry.getValue().size(); i++) {
+                this.approximateFrequencies.increment(entry.getKey());
+            }
+            for (LocalDateTime time : entry.getValue().retained()) {
+                long age = Math.max(0, Duration.between(time, now).getSeconds());
+                if (age < WikiMediator.TRENDINGWINDOW) {
+                    this.approximateRecent.increment(entry.getKey(), second - age);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param times is not null and maps each search or query to the times it was made
+     * @return a counter of the searches and queries in times that were made in the last
+     * TRENDINGWINDOW seconds
+     */
+    private static SlidingWindowCounter recentCounts(Map<String, Timeline> times) {
+        SlidingWindowCounter counter = new SlidingWindowCounter(WikiMediator.TRENDINGWINDOW);
+        LocalDateTime now = LocalDateTime.now();
+        long second = currentSecond();
+
+        // every time in the window is within SEARCHRETENTION of now, so is retained
+        for (Map.Entry<String, Timeline> entry : times.entrySet()) {
+            for (LocalDateTime time : entry.getValue().retained()) {
+                long age = Math.max(0, Duration.between(time, now).getSeconds());
+                if (age < WikiMediator.TRENDINGWINDOW) {
+                    counter.increment(entry.getKey(), second - age);
+                }
+            }
+        }
+
+        return counter;
+    }
+
+
     /* Task 3 */
 
     /**
@@ -618,18 +1226,24 @@ public class WikiMediator {
      * If start Page equals stop Page, returns a list of the single page
      */
     public List<String> getPath(String startPage, String stopPage) {
-        synchronized (this) {
-            List<LocalDateTime> requestDates = this.requestMap.get("getPath");
-            requestDates.add(LocalDateTime.now());
-            this.requestMap.replace("getPath", requestDates);
-        }
+        return getPath(startPage, stopPage, Deadline.none());
+    }
+
+    /**
+     * Finds a path through links from the startPage to the stopPage, stopping when a deadline
+     * expires
+     * @param startPage a page on en.wikipedia.org
+     * @param stopPage a page on en.wikipedia.org
+     * @param deadline is not null, no more links are looked up once it expires
+     * @return A list of strings on the path between the start Page and stop Page
+     * Returns an empty list of strings if no such path exists or getPath exceeds 5 minutes
+     * If start Page equals stop Page, returns a list of the single page
+     * @throws DeadlineExceededException if deadline expires before a path is found
+     */
+    public List<String> getPath(String startPage, String stopPage, Deadline deadline) {
+        recordRequest("getPath");
 
-        LocalDateTime startTime = LocalDateTime.now();
-        Queue<String> queue = new LinkedBlockingQueue<>();
-        Map<String, String> parentMap = new ConcurrentHashMap<>();
-        parentMap.put(startPage, startPage);
-        queue.add(startPage);
-        boolean pageFound = false;
+        Deadline searchDeadline = deadline.within(5, TimeUnit.MINUTES);
 
         if (startPage.equals(stopPage)) {
             List<String> returnList = new ArrayList<>();
@@ -637,50 +1251,116 @@ public class WikiMediator {
             return returnList;
         }
 
-        // if we reach the timeout value without finding the page, assume no possible path
-        while (LocalDateTime.now().isBefore(startTime.plusMinutes(5)) && !pageFound) {
-            String checkPage = queue.remove();
-            List<String> linksOnPage = this.wiki.getLinksOnPage(checkPage);
-            for (String page : linksOnPage) {
-                // if parentMap doesn't contain page, we haven't visited it yet,
-                // so we add it to the queue
-                if (!parentMap.containsKey(page)) {
-                    parentMap.put(page, checkPage);
-                    queue.add(page);
-                }
-
-                // if page is the destination, break out of loop and set break flag in while loop
-                // to true so we break out of queue loop
-                if (page.equals(stopPage)) {
-                    pageFound = true;
-                    break;
-                }
-
+        // search forward from startPage through the links on pages and backward from stopPage
+        // through the pages that link to it, one level at a time, until the searches meet.
+        // each map takes a page to the page next to it on the way back to where its search began
+        Map<String, String> forwardParents = new ConcurrentHashMap<>();
+        Map<String, String> backwardParents = new ConcurrentHashMap<>();
+        forwardParents.put(startPage, startPage);
+        backwardParents.put(stopPage, stopPage);
+        List<String> forwardFrontier = Collections.singletonList(startPage);
+        List<String> backwardFrontier = Collections.singletonList(stopPage);
+        String meetingPage = null;
+
+        // if we reach the timeout value without the searches meeting, assume no possible path.
+        // if either frontier runs out, no path exists
+        while (meetingPage == null && !forwardFrontier.isEmpty() && !backwardFrontier.isEmpty()
+                && !searchDeadline.isExpired()) {
+            // expand the smaller side, so that neither search grows much past the other
+            Queue<String> nextLevel = new ConcurrentLinkedQueue<>();
+            if (forwardFrontier.size() <= backwardFrontier.size()) {
+                meetingPage = searchLevel(forwardFrontier, true, forwardParents,
+                        backwardParents, nextLevel, searchDeadline);
+                forwardFrontier = new ArrayList<>(nextLevel);
+            } else {
+                meetingPage = searchLevel(backwardFrontier, false, backwardParents,
+                        forwardParents, nextLevel, searchDeadline);
+                backwardFrontier = new ArrayList<>(nextLevel);
             }
         }
 
-        // if we completely exhaust the queue, then stop Page is either invalid or an orphan page
-        if (!pageFound) {
+        if (meetingPage == null && deadline.isExpired()) {
+            throw new DeadlineExceededException();
+        }
+
+        // if the searches never met, then stop Page is either invalid or an orphan page
+        if (meetingPage == null) {
             return new ArrayList<>();
-        } else {
-            // we have a path from startPage to stopPage
-            List<String> pathList = new ArrayList<>();
-            pathList.add(stopPage);
-            String parentPage = stopPage;
+        }
 
-            while (!pathList.contains(startPage)) {
-                pathList.add(parentMap.get(parentPage));
-                parentPage = parentMap.get(parentPage);
-            }
+        // we have a path from startPage to meetingPage and from meetingPage to stopPage
+        List<String> pagePath = new ArrayList<>();
+        String page = meetingPage;
+        while (!page.equals(startPage)) {
+            page = forwardParents.get(page);
+            pagePath.add(page);
+        }
+        Collections.reverse(pagePath);
+
+        page = meetingPage;
+        pagePath.add(page);
+        while (!page.equals(stopPage)) {
+            page = backwardParents.get(page);
+            pagePath.add(page);
+        }
 
-            List<String> pagePath = new ArrayList<>();
-            for (int i = pathList.size() - 1; i >= 0; i--) {
-                pagePath.add(pathList.get(i));
+        return pagePath;
+    }
+
+    /**
+     * Helper method for getPath
+     * Expands one level of one side of the search, looking up the links of its pages in
+     * batches. A level of more than one batch is split by batch between the calling thread
+     * and up to PARALLELFETCHES - 1 threads of EXPANDER. Since each side is expanded a whole
+     * level at a time, every page found on this level that the other side has visited is on
+     * a shortest path, so all the threads stop as soon as one of them finds such a page.
+     * @param frontier is not null and holds the pages of the current level of this side
+     * @param forward true to follow the links on the pages, false to follow the links to them
+     * @param parents is not null, thread safe and maps every page this side has visited to
+     *                the page it was reached from. The pages found on this level are added
+     *                to it.
+     * @param otherParents is not null and holds every page the other side has visited
+     * @param nextLevel is not null and thread safe, the pages found on this level are added
+     *                  to it
+     * @param deadline is not null, no batch is looked up once it expires
+     * @return a page both sides have visited, or null if the sides have not met
+     */
+    private String searchLevel(List<String> frontier, final boolean forward,
+                               final Map<String, String> parents,
+                               final Map<String, String> otherParents,
+                               final Queue<String> nextLevel, final Deadline deadline) {
+        final List<List<String>> batches = WikiBackend.batches(frontier);
+        final AtomicInteger nextBatch = new AtomicInteger();
+        final AtomicReference<String> meetingPage = new AtomicReference<>();
+
+        inParallel(new Runnable() {
+            @Override
+            public void run() {
+                int batch = nextBatch.getAndIncrement();
+                while (batch < batches.size() && meetingPage.get() == null
+                        && !deadline.isExpired()) {
+                    List<String> titles = batches.get(batch);
+                    Map<String, List<String>> linksOfPages = forward
+                            ? linkGraph.getLinks(titles) : linkGraph.getLinksTo(titles);
+                    for (String checkPage : titles) {
+                        for (String page : linksOfPages.get(checkPage)) {
+                            // if parents doesn't contain page, this side hasn't visited it yet
+                            if (parents.putIfAbsent(page, checkPage) == null) {
+                                nextLevel.add(page);
+                            }
 
+                            if (otherParents.containsKey(page)) {
+                                meetingPage.compareAndSet(null, page);
+                                return;
+                            }
+                        }
+                    }
+                    batch = nextBatch.getAndIncrement();
+                }
             }
+        }, batches.size());
 
-            return pagePath;
-        }
+        return meetingPage.get();
     }
 
     /**
@@ -690,16 +1370,23 @@ public class WikiMediator {
      * Returns an empty list if no such pages exist or query is invalid
      */
     public List<String> executeQuery(String query) {
-        synchronized (this) {
-            List<LocalDateTime> requestDates = this.requestMap.get("executeQuery");
-            requestDates.add(LocalDateTime.now());
-            this.requestMap.replace("executeQuery", requestDates);
-        }
+        return executeQuery(query, Deadline.none());
+    }
+
+    /**
+     * Returns a list of pages that match a certain criteria, stopping when a deadline expires
+     * @param query a string that defines the search
+     * @param deadline is not null, no more requests are sent to wikipedia once it expires
+     * @return a list of pages that match the criteria query, as executeQuery(query)
+     * @throws DeadlineExceededException if deadline expires before the query is done
+     */
+    public List<String> executeQuery(String query, Deadline deadline) {
+        recordRequest("executeQuery");
 
         List<String> queryList;
 
         try {
-            queryList = this.parse(query);
+            queryList = this.parse(query, deadline);
         } catch (InvalidQueryException e) {
             System.out.println("Error parsing query.");
             return new ArrayList<>();
@@ -715,6 +1402,19 @@ public class WikiMediator {
      * @throws InvalidQueryException if query is invalid according to grammar
      */
     public List<String> parse(String query) throws InvalidQueryException {
+        return parse(query, Deadline.none());
+    }
+
+    /**
+     * Parse parses the client's string in order to find the query, stopping when a deadline
+     * expires
+     * @param query is not null
+     * @param deadline is not null, no more requests are sent to wikipedia once it expires
+     * @return a list of strings that match the query in wikipedia
+     * @throws InvalidQueryException if query is invalid according to grammar
+     * @throws DeadlineExceededException if deadline expires before the query is done
+     */
+    private List<String> parse(String query, Deadline deadline) throws InvalidQueryException {
         CharStream stream = new ANTLRInputStream(query);
         QueryLexer lexer = new QueryLexer(stream);
         lexer.reportErrorsAsExceptions();
@@ -729,7 +1429,7 @@ public class WikiMediator {
         ParseTree tree = parser.query();
 
         ParseTreeWalker walker = new ParseTreeWalker();
-        QueryListener_QueryCreator listener = new QueryListener_QueryCreator();
+        QueryListener_QueryCreator listener = new QueryListener_QueryCreator(deadline);
         walker.walk(listener, tree);
 
         synchronized (this) {
@@ -753,7 +1453,25 @@ public class WikiMediator {
         Stack<String> results = new Stack<>();
         List<String> seenList = new ArrayList<>();
         List<String> queryList = new ArrayList<>();
-        Wiki wiki = new Wiki("en.wikipedia.org");
+        final Deadline deadline;
+
+        /**
+         * @param deadline is not null, the listener stops sending requests to wikipedia once
+         *                 it expires
+         */
+        QueryListener_QueryCreator(Deadline deadline) {
+            this.deadline = deadline;
+        }
+
+        /**
+         * Stops walking the query if the deadline has expired
+         * @throws DeadlineExceededException if the deadline has expired
+         */
+        private void checkDeadline() {
+            if (deadline.isExpired()) {
+                throw new DeadlineExceededException();
+            }
+        }
 
         /**
          * Based on the condition, adds the appropriate argument to the results stack
@@ -762,13 +1480,16 @@ public class WikiMediator {
          */
         @Override
         public void exitSimpleCondition(QueryParser.SimpleConditionContext ctx) {
+            checkDeadline();
             if (ctx.CATEGORY() != null) {
                 int length = ctx.STRING().getText().length();
                 String category = "Category:" + ctx.STRING().getText().substring(1, length - 1);
 
                 if (authorFlag) {
-                    for (String c : wiki.getCategoryMembers(category)) {
-                        String editor = wiki.getLastEditor(c);
+                    List<String> members = wiki.getCategoryMembers(category);
+                    Map<String, String> editors = wiki.getLastEditors(members);
+                    for (String c : members) {
+                        String editor = editors.get(c);
                         if (!results.contains(editor)) {
                             results.push(editor);
                         }
@@ -815,6 +1536,7 @@ public class WikiMediator {
          */
         @Override
         public void exitCondition(QueryParser.ConditionContext ctx) {
+            checkDeadline();
 
             if (ctx.RPAREN() != null) {
                 if (!results.isEmpty() && results.peek().equals("")) {
@@ -883,6 +1605,7 @@ public class WikiMediator {
          *           sorts the list if there is a sorted query
          */
         @Override public void exitQuery(QueryParser.QueryContext ctx) {
+            checkDeadline();
 
             if (orFlag) {
                 while (!results.isEmpty()) {
@@ -893,21 +1616,34 @@ public class WikiMediator {
                     }
                 }
             } else if (andFlag) {
+                List<String> checkQueries = new ArrayList<>();
                 while (!results.isEmpty()) {
                     String checkQuery = results.pop();
                     if (!checkQuery.equals("")) {
-                        if (checkAuthors) {
-                            String editor = wiki.getLastEditor(checkQuery);
-                            if (wiki.exists(checkQuery)
-                                    && (seenList.contains(editor) || author.equals(editor))) {
-                                queryList.add(checkQuery);
-                            } else if (checkQuery.equals(author)) {
-                                queryList.add(checkQuery);
-                            }
-                        } else {
-                            if (seenList.contains(checkQuery)) {
-                                queryList.add(checkQuery);
-                            }
+                        checkQueries.add(checkQuery);
+                    }
+                }
+
+                // look up the editors of every page at once
+                Map<String, String> editors = new HashMap<>();
+                Map<String, Boolean> exist = new HashMap<>();
+                if (checkAuthors) {
+                    editors = wiki.getLastEditors(checkQueries);
+                    exist = wiki.pagesExist(checkQueries);
+                }
+
+                for (String checkQuery : checkQueries) {
+                    if (checkAuthors) {
+                        String editor = editors.get(checkQuery);
+                        if (exist.get(checkQuery)
+                                && (seenList.contains(editor) || author.equals(editor))) {
+                            queryList.add(checkQuery);
+                        } else if (checkQuery.equals(author)) {
+                            queryList.add(checkQuery);
+                        }
+                    } else {
+                        if (seenList.contains(checkQuery)) {
+                            queryList.add(checkQuery);
                         }
                     }
                 }
@@ -962,10 +1698,22 @@ public class WikiMediator {
          * @modifies seenList, adds appropriate arguments if seen
          */
         private void setCheckAuthors() {
+            List<String> checkQueries = new ArrayList<>();
             while (!results.isEmpty() && !results.peek().equals("")) {
-                String checkQuery = results.pop();
+                checkQueries.add(results.pop());
+            }
+
+            // look up the editors of every page at once
+            Map<String, String> editors = new HashMap<>();
+            Map<String, Boolean> exist = new HashMap<>();
+            if (checkAuthors) {
+                editors = wiki.getLastEditors(checkQueries);
+                exist = wiki.pagesExist(checkQueries);
+            }
+
+            for (String checkQuery : checkQueries) {
                 if (checkAuthors) {
-                    if (wiki.exists(checkQuery) && wiki.getLastEditor(checkQuery).equals(author)) {
+                    if (exist.get(checkQuery) && author.equals(editors.get(checkQuery))) {
                         queryList.add(checkQuery);
                     } else if (checkQuery.equals(author)) {
                         queryList.add(checkQuery);
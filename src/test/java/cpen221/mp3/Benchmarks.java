@@ -0,0 +1,814 @@
+package cpen221.mp3;
+
+import cpen221.mp3.cache.Cache;
+import cpen221.mp3.cache.CacheObject;
+import cpen221.mp3.cache.CompressedCacheObject;
+import cpen221.mp3.cache.NotFoundException;
+import cpen221.mp3.cache.TextCacheable;
+import cpen221.mp3.cache.Weigher;
+import cpen221.mp3.wikimediator.PageStorage;
+import cpen221.mp3.wikimediator.StatsAccuracy;
+import cpen221.mp3.wikimediator.SyntheticWikiBackend;
+import cpen221.mp3.wikimediator.WikiBackend;
+import cpen221.mp3.wikimediator.WikiMediator;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Benchmarks {
+    /*
+        Manual benchmarks, these are not run by the test suite.
+        Run main with the name of a benchmark as the first argument, or with no
+        arguments to run all of them. Results are printed to System.out.
+     */
+
+    /* how long each measurement runs for */
+    private static final long RUN_MILLIS = 2000;
+
+    public static void main(String[] args) throws InterruptedException {
+        String name = args.length > 0 ? args[0] : "all";
+
+        if (name.equals("all") || name.equals("cacheThroughput")) {
+            cacheThroughput();
+        }
+        if (name.equals("all") || name.equals("lookupScaling")) {
+            lookupScaling();
+        }
+        if (name.equals("all") || name.equals("hitAllocation")) {
+            hitAllocation();
+        }
+        if (name.equals("all") || name.equals("compression")) {
+            compression();
+        }
+        if (name.equals("all") || name.equals("getPageLoad")) {
+            getPageLoad();
+        }
+        if (name.equals("all") || name.equals("batchedLookups")) {
+            batchedLookups();
+        }
+        if (name.equals("all") || name.equals("connectedPages")) {
+            connectedPages();
+        }
+        if (name.equals("all") || name.equals("parallelExpansion")) {
+            parallelExpansion();
+        }
+        if (name.equals("all") || name.equals("pathSearch")) {
+            pathSearch();
+        }
+        if (name.equals("all") || name.equals("pathLatency")) {
+            pathLatency();
+        }
+        if (name.equals("all") || name.equals("zeitgeist")) {
+            zeitgeist();
+        }
+        if (name.equals("all") || name.equals("trending")) {
+            trending();
+        }
+        if (name.equals("all") || name.equals("approximateStats")) {
+            approximateStats();
+        }
+        if (name.equals("all") || name.equals("peakLoad")) {
+            peakLoad();
+        }
+        if (name.equals("all") || name.equals("timestampMemory")) {
+            timestampMemory();
+        }
+    }
+
+    /**
+     * Compares cache hit throughput of the locked and concurrent cache modes
+     * at 1, 4, 16 and 64 reader threads.
+     */
+    private static void cacheThroughput() throws InterruptedException {
+        int capacity = 1024;
+
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            for (boolean concurrent : new boolean[]{false, true}) {
+                Cache<CacheObject> cache = new Cache<>(capacity, 3600, concurrent);
+                for (int i = 0; i < capacity; i++) {
+                    cache.put(new CacheObject("page" + i, "text"));
+                }
+
+                LongAdder hits = new LongAdder();
+                long stopTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+                List<Thread> readers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int seed = t;
+                    Thread reader = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            String[] ids = new String[capacity];
+                            for (int i = 0; i < capacity; i++) {
+                                ids[i] = "page" + i;
+                            }
+                            int i = seed;
+                            long count = 0;
+                            while (System.nanoTime() < stopTime) {
+                                try {
+                                    cache.get(ids[i & (capacity - 1)]);
+                                    count++;
+                                } catch (NotFoundException e) {
+                                    throw new IllegalStateException(e);
+                                }
+                                i += 7;
+                            }
+                            hits.add(count);
+                        }
+                    });
+                    readers.add(reader);
+                    reader.start();
+                }
+                for (Thread reader : readers) {
+                    reader.join();
+                }
+
+                System.out.printf("cacheThroughput threads=%d mode=%s hits/s=%,d%n", threads,
+                        concurrent ? "concurrent" : "locked",
+                        hits.sum() * 1000 / RUN_MILLIS);
+            }
+        }
+    }
+
+
+    /**
+     * Times get and touch on caches of 1K to 1M objects, to show that a lookup takes the same
+     * time however many objects the cache holds. A HashMap of the same objects is timed too:
+     * large caches no longer fit in the CPU caches, so lookups in both get a few times slower
+     * as they grow, rather than in proportion to the number of objects.
+     */
+    private static void lookupScaling() {
+        for (int capacity : new int[]{1 << 10, 1 << 14, 1 << 18, 1 << 20}) {
+            Cache<CacheObject> cache = new Cache<>(capacity, 3600, false);
+            Map<String, CacheObject> map = new HashMap<>();
+            String[] ids = new String[capacity];
+            for (int i = 0; i < capacity; i++) {
+                ids[i] = "page" + i;
+                CacheObject co = new CacheObject(ids[i], "text");
+                cache.put(co);
+                map.put(ids[i], co);
+            }
+
+            long gets = 0;
+            long start = System.nanoTime();
+            long stopTime = start + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+            int i = 0;
+            while (System.nanoTime() < stopTime) {
+                try {
+                    cache.get(ids[i & (capacity - 1)]);
+                } catch (NotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+                gets++;
+                i += 7919;
+            }
+            long getNanos = System.nanoTime() - start;
+
+            long touches = 0;
+            start = System.nanoTime();
+            stopTime = start + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+            while (System.nanoTime() < stopTime) {
+                if (!cache.touch(ids[i & (capacity - 1)])) {
+                    throw new IllegalStateException();
+                }
+                touches++;
+                i += 7919;
+            }
+            long touchNanos = System.nanoTime() - start;
+
+            long mapGets = 0;
+            start = System.nanoTime();
+            stopTime = start + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+            while (System.nanoTime() < stopTime) {
+                if (map.get(ids[i & (capacity - 1)]) == null) {
+                    throw new IllegalStateException();
+                }
+                mapGets++;
+                i += 7919;
+            }
+            long mapNanos = System.nanoTime() - start;
+
+            System.out.printf("lookupScaling capacity=%,d ns/get=%d ns/touch=%d "
+                            + "ns/HashMap.get=%d%n", capacity, getNanos / gets,
+                    touchNanos / touches, mapNanos / mapGets);
+        }
+    }
+    /**
+     * Measures the bytes allocated by the current thread per cache hit,
+     * after the JIT has warmed up.
+     */
+    private static void hitAllocation() {
+        int capacity = 1024;
+        int hits = 10_000_000;
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        for (boolean concurrent : new boolean[]{false, true}) {
+            Cache<CacheObject> cache = new Cache<>(capacity, 3600, concurrent);
+            String[] ids = new String[capacity];
+            for (int i = 0; i < capacity; i++) {
+                ids[i] = "page" + i;
+                cache.put(new CacheObject(ids[i], "text"));
+            }
+
+            try {
+                for (int i = 0; i < hits; i++) {
+                    cache.get(ids[i & (capacity - 1)]);
+                }
+                long before = bean.getThreadAllocatedBytes(threadId);
+                for (int i = 0; i < hits; i++) {
+                    cache.get(ids[i & (capacity - 1)]);
+                }
+                long allocated = bean.getThreadAllocatedBytes(threadId) - before;
+
+                System.out.printf("hitAllocation mode=%s bytes=%,d bytes/hit=%.4f%n",
+                        concurrent ? "concurrent" : "locked", allocated,
+                        (double) allocated / hits);
+            } catch (NotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Compares the memory taken up by plain and compressed page text against the
+     * latency of a cache hit that reads the whole text.
+     */
+    private static void compression() {
+        int pages = 200;
+        Random random = new Random(221);
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < pages; i++) {
+            texts.add(wikitext(random, 20_000 + random.nextInt(80_000)));
+        }
+
+        compressionRun("plain", pages, texts, CacheObject.TEXT_WEIGHER, false);
+        compressionRun("compressed", pages, texts, CompressedCacheObject.SIZE_WEIGHER, true);
+    }
+
+    /**
+     * Fills a cache with texts and reports its total weight and mean hit latency.
+     */
+    private static <T extends TextCacheable> void compressionRun(String mode, int pages,
+                                                                 List<String> texts,
+                                                                 Weigher<T> weigher,
+                                                                 boolean compressed) {
+        Cache<T> cache = new Cache<>(Long.MAX_VALUE, 3600, weigher, false);
+        long bytes = 0;
+        for (int i = 0; i < pages; i++) {
+            @SuppressWarnings("unchecked")
+            T page = (T) (compressed ? new CompressedCacheObject("page" + i, texts.get(i))
+                    : new CacheObject("page" + i, texts.get(i)));
+            cache.put(page);
+            bytes += weigher.weigh(page);
+        }
+
+        try {
+            long checksum = 0;
+            int hits = 20 * pages;
+            for (int i = 0; i < hits; i++) {
+                checksum += cache.get("page" + (i % pages)).getText().length();
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < hits; i++) {
+                checksum += cache.get("page" + (i % pages)).getText().length();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("compression mode=%s pages=%d bytes=%,d hit-latency-us=%.1f "
+                    + "(checksum %d)%n", mode, pages, bytes, elapsed / 1000.0 / hits, checksum);
+        } catch (NotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Runs getPage from 16 client threads against an in-memory wiki with 20ms of latency per
+     * request, with page titles drawn so that a few pages are far more popular than the rest,
+     * and reports requests served and requests that reached the wiki.
+     */
+    private static void getPageLoad() throws InterruptedException {
+        int pages = 10_000;
+        int threads = 16;
+
+        for (PageStorage storage : PageStorage.values()) {
+            SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, pages, 20);
+            WikiMediator wm = new WikiMediator(wiki, storage);
+            LongAdder requests = new LongAdder();
+            long stopTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+
+            List<Thread> clients = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Random random = new Random(t);
+                Thread client = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        long count = 0;
+                        while (System.nanoTime() < stopTime) {
+                            int page = (int) Math.min(pages - 1,
+                                    Math.abs(random.nextGaussian()) * pages / 50);
+                            wm.getPage("Page " + page);
+                            count++;
+                        }
+                        requests.add(count);
+                    }
+                });
+                clients.add(client);
+                client.start();
+            }
+            for (Thread client : clients) {
+                client.join();
+            }
+
+            System.out.printf("getPageLoad storage=%s requests/s=%,d wiki-calls=%,d%n", storage,
+                    requests.sum() * 1000 / RUN_MILLIS, wiki.getRequestCount());
+        }
+    }
+
+    /**
+     * Runs getConnectedPages, getPath and an author query against an in-memory wiki, once
+     * looking up titles one at a time and once in batches, and reports the requests that
+     * reached the wiki and the time taken with 2ms of latency per request.
+     */
+    private static void batchedLookups() {
+        for (boolean batch : new boolean[]{false, true}) {
+            SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, 10_000, 2);
+            WikiBackend backend = batch ? wiki : perTitle(wiki);
+            WikiMediator wm = new WikiMediator(backend, PageStorage.PLAIN);
+
+            long start = System.nanoTime();
+            wm.getConnectedPages("Page 0", 2);
+            wm.getPath("Page 0", "Page 5000");
+            wm.executeQuery("get author where category is 'Group 3'");
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            System.out.printf("batchedLookups batch=%b wiki-calls=%,d time=%,dms%n", batch,
+                    wiki.getRequestCount(), millis);
+        }
+    }
+
+    /**
+     * Counts the pages whose links are looked up by getConnectedPages for hops 1 to 3, next
+     * to the number the earlier recursive search looked up, which fetched the links of every
+     * page twice and expanded a page again every time it was reached.
+     */
+    private static void connectedPages() {
+        for (int hops = 1; hops <= 3; hops++) {
+            SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, 10_000, 0);
+            WikiMediator wm = new WikiMediator(perTitle(wiki), PageStorage.PLAIN);
+            int pages = wm.getConnectedPages("Page 0", hops).size();
+            long bfs = wiki.getRequestCount();
+
+            SyntheticWikiBackend recursiveWiki = new SyntheticWikiBackend(221, 10_000, 0);
+            recursiveExpand(recursiveWiki, "Page 0", hops);
+            long recursive = recursiveWiki.getRequestCount();
+
+            System.out.printf("connectedPages hops=%d pages=%,d bfs-expansions=%,d "
+                    + "recursive-expansions=%,d%n", hops, pages, bfs, recursive);
+        }
+    }
+
+    /**
+     * Times getConnectedPages for hops 1 to 4 against an in-memory wiki with 20ms of latency
+     * per request, next to the time the same requests would take one after the other.
+     */
+    private static void parallelExpansion() {
+        int latency = 20;
+
+        for (int hops = 1; hops <= 4; hops++) {
+            SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, 10_000, latency);
+            WikiMediator wm = new WikiMediator(wiki, PageStorage.PLAIN);
+
+            long start = System.nanoTime();
+            int pages = wm.getConnectedPages("Page 0", hops).size();
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            System.out.printf("parallelExpansion hops=%d pages=%,d wiki-calls=%,d time=%,dms "
+                    + "sequential=%,dms%n", hops, pages, wiki.getRequestCount(), millis,
+                    wiki.getRequestCount() * latency);
+        }
+    }
+
+    /**
+     * Counts the pages expanded by getPath between pages of a 100,000 page in-memory wiki,
+     * next to the number a breadth first search from the start page alone expands.
+     */
+    private static void pathSearch() {
+        for (int stop : new int[]{5_000, 50_000, 99_999}) {
+            SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, 100_000, 0);
+            WikiMediator wm = new WikiMediator(perTitle(wiki), PageStorage.PLAIN);
+            int length = wm.getPath("Page 0", "Page " + stop).size();
+            long bidirectional = wiki.getRequestCount();
+
+            SyntheticWikiBackend oneSidedWiki = new SyntheticWikiBackend(221, 100_000, 0);
+            oneSidedSearch(oneSidedWiki, "Page 0", "Page " + stop);
+            long oneSided = oneSidedWiki.getRequestCount();
+
+            System.out.printf("pathSearch stop=Page %d path-length=%d bidirectional-expansions=%,d "
+                    + "one-sided-expansions=%,d%n", stop, length, bidirectional, oneSided);
+        }
+    }
+
+    /**
+     * Times getPath between pages of a 100,000 page in-memory wiki with 20ms of latency per
+     * request, next to the time the same requests would take one after the other.
+     */
+    private static void pathLatency() {
+        int latency = 20;
+
+        for (int stop : new int[]{5_000, 50_000, 99_999}) {
+            SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, 100_000, latency);
+            WikiMediator wm = new WikiMediator(wiki, PageStorage.PLAIN);
+
+            long start = System.nanoTime();
+            int length = wm.getPath("Page 0", "Page " + stop).size();
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            System.out.printf("pathLatency stop=Page %d path-length=%d wiki-calls=%,d time=%,dms "
+                    + "sequential=%,dms%n", stop, length, wiki.getRequestCount(), millis,
+                    wiki.getRequestCount() * latency);
+        }
+    }
+
+    /**
+     * Compares the memory used to keep the times of 1,000,000 requests and 1,000,000 searches
+     * of 1,000 queries against lists of LocalDateTime, as they were kept before.
+     */
+    private static void timestampMemory() {
+        int requests = 1_000_000;
+        int queries = 1_000;
+
+        long before = usedHeap();
+        WikiMediator wm = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN);
+        for (int i = 0; i < requests; i++) {
+            wm.simpleSearch("query " + i % queries, 0);
+        }
+        long timelineBytes = usedHeap() - before;
+
+        before = usedHeap();
+        List<LocalDateTime> requestTimes = Collections.synchronizedList(new ArrayList<>());
+        Map<String, List<LocalDateTime>> searchTimes = new HashMap<>();
+        for (int i = 0; i < requests; i++) {
+            String query = "query " + i % queries;
+            requestTimes.add(LocalDateTime.now());
+            if (!searchTimes.containsKey(query)) {
+                searchTimes.put(query, Collections.synchronizedList(new ArrayList<>()));
+            }
+            searchTimes.get(query).add(LocalDateTime.now());
+        }
+        long listBytes = usedHeap() - before;
+
+        System.out.printf("timestampMemory requests=%,d timelines=%,dKB lists=%,dKB%n",
+                requests, timelineBytes / 1024, listBytes / 1024);
+        // keeps both alive until they have been measured
+        if (wm.zeitgeist(1).isEmpty() || requestTimes.size() + searchTimes.size() == 0) {
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Times peakLoad30s after 1,000,000 requests, next to one step of the earlier peakLoad30s,
+     * which counted every request once for each second the mediator had been running.
+     */
+    private static void peakLoad() {
+        int requests = 1_000_000;
+        WikiMediator wm = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN);
+        List<LocalDateTime> times = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            wm.zeitgeist(0);
+            times.add(LocalDateTime.now());
+        }
+
+        int calls = 1000;
+        long start = System.nanoTime();
+        int peak = 0;
+        for (int i = 0; i < calls; i++) {
+            peak = wm.peakLoad30s();
+        }
+        long histogramNanos = (System.nanoTime() - start) / calls;
+
+        start = System.nanoTime();
+        LocalDateTime intervalStart = times.get(0);
+        LocalDateTime intervalEnd = intervalStart.plusSeconds(30);
+        int intervalRequests = 0;
+        for (LocalDateTime time : times) {
+            if (time.isBefore(intervalEnd) && !time.isBefore(intervalStart)) {
+                intervalRequests++;
+            }
+        }
+        long stepNanos = System.nanoTime() - start;
+
+        System.out.printf("peakLoad requests=%,d peak=%,d histogram=%,dns "
+                        + "scan=%,dns per second of uptime (%,d counted), %,dms per day%n",
+                requests, peak, histogramNanos, stepNanos, intervalRequests,
+                stepNanos * 86400 / 1_000_000);
+    }
+
+    /**
+     * Compares the memory used to count 1,000,000 searches of a Zipf distribution over
+     * 500,000 queries, and how many of the top 100 of zeitgeist and trending are right, for
+     * exact counts and for approximate counts with several error bounds.
+     */
+    private static void approximateStats() {
+        int searches = 1_000_000;
+        int queries = 500_000;
+        int limit = 100;
+        int[] stream = zipf(searches, queries, 1.1, new Random(221));
+
+        // every call is also kept in the request statistics, so the memory of as many calls
+        // that are not searches is taken off
+        long before = usedHeap();
+        WikiMediator baseline = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN);
+        for (int i = 0; i < searches; i++) {
+            baseline.zeitgeist(0);
+        }
+        long baselineBytes = usedHeap() - before;
+        baseline = null;
+
+        List<String> exactZeitgeist = null;
+        List<String> exactTrending = null;
+        StatsAccuracy[] accuracies = new StatsAccuracy[]{StatsAccuracy.exact(),
+            StatsAccuracy.approximate(0.01, 0.01), StatsAccuracy.approximate(0.001, 0.01),
+            StatsAccuracy.approximate(0.0001, 0.01)};
+        for (StatsAccuracy accuracy : accuracies) {
+            before = usedHeap();
+            WikiMediator wm = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                    PageStorage.PLAIN, accuracy);
+            for (int query : stream) {
+                wm.simpleSearch("query " + query, 0);
+            }
+            long bytes = usedHeap() - before - baselineBytes;
+
+            List<String> zeitgeist = wm.zeitgeist(limit);
+            List<String> trending = wm.trending(limit);
+            if (accuracy.isExact()) {
+                exactZeitgeist = zeitgeist;
+                exactTrending = trending;
+            }
+            System.out.printf("approximateStats epsilon=%s memory=%,dKB zeitgeist=%d/%d "
+                            + "trending=%d/%d%n",
+                    accuracy.isExact() ? "exact" : Double.toString(accuracy.epsilon()),
+                    bytes / 1024, overlap(zeitgeist, exactZeitgeist), limit,
+                    overlap(trending, exactTrending), limit);
+        }
+    }
+
+    /**
+     * @param count >= 0 the number of values
+     * @param range > 0 the number of different values
+     * @param exponent > 0 how quickly the chance of a value falls off with its rank
+     * @param random is not null
+     * @return count values in [0, range), where the chance of value k is proportional to
+     * 1 / (k + 1) ^ exponent
+     */
+    private static int[] zipf(int count, int range, double exponent, Random random) {
+        double[] cumulative = new double[range];
+        double total = 0;
+        for (int k = 0; k < range; k++) {
+            total += 1 / Math.pow(k + 1, exponent);
+            cumulative[k] = total;
+        }
+
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            int value = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            values[i] = value < 0 ? -value - 1 : value;
+        }
+        return values;
+    }
+
+    /**
+     * @param found is not null
+     * @param expected is not null
+     * @return the number of elements of found that are in expected
+     */
+    private static int overlap(List<String> found, List<String> expected) {
+        Set<String> expectedSet = new HashSet<>(expected);
+        int overlap = 0;
+        for (String element : found) {
+            if (expectedSet.contains(element)) {
+                overlap++;
+            }
+        }
+        return overlap;
+    }
+
+    /**
+     * @return the bytes of heap in use after a garbage collection
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Times trending(10) after 1,000,000 searches of 10,000 queries, next to the earlier
+     * trending that counted every time every query was ever searched.
+     */
+    private static void trending() {
+        int searches = 1_000_000;
+        int queries = 10_000;
+        int limit = 10;
+        WikiMediator wm = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN);
+        Map<String, List<LocalDateTime>> times = new HashMap<>();
+        Random random = new Random(221);
+
+        for (int i = 0; i < searches; i++) {
+            String query = "query " + random.nextInt(queries);
+            wm.simpleSearch(query, 0);
+            if (!times.containsKey(query)) {
+                times.put(query, new ArrayList<>());
+            }
+            times.get(query).add(LocalDateTime.now());
+        }
+
+        int calls = 1000;
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            wm.trending(limit);
+        }
+        long windowNanos = (System.nanoTime() - start) / calls;
+
+        start = System.nanoTime();
+        LocalDateTime compareTime = LocalDateTime.now().minusSeconds(30);
+        Map<String, Integer> counts = new HashMap<>();
+        for (Map.Entry<String, List<LocalDateTime>> query : times.entrySet()) {
+            int count = 0;
+            for (LocalDateTime time : query.getValue()) {
+                if (time.isAfter(compareTime)) {
+                    count++;
+                }
+            }
+            counts.put(query.getKey(), count);
+        }
+        long scanNanos = System.nanoTime() - start;
+
+        System.out.printf("trending searches=%,d queries=%,d window=%,dns scan=%,dns%n",
+                searches, counts.size(), windowNanos, scanNanos);
+    }
+
+    /**
+     * Times zeitgeist(10) after 1,000,000 distinct searches, a few of them repeated, next to
+     * the earlier zeitgeist that made one pass over every search for each result.
+     */
+    private static void zeitgeist() {
+        int distinct = 1_000_000;
+        int limit = 10;
+        WikiMediator wm = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN);
+        Map<String, Integer> counts = new HashMap<>();
+        Random random = new Random(221);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < distinct; i++) {
+            String query = "query " + (i % 10 == 0 ? random.nextInt(100) : i);
+            wm.simpleSearch(query, 0);
+            counts.merge(query, 1, Integer::sum);
+        }
+        long recordNanos = System.nanoTime() - start;
+
+        int calls = 1000;
+        start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            wm.zeitgeist(limit);
+        }
+        long indexNanos = (System.nanoTime() - start) / calls;
+
+        start = System.nanoTime();
+        List<String> mostCommon = new ArrayList<>();
+        while (mostCommon.size() < limit) {
+            int maxOccurrences = 0;
+            String mostOccurringSearch = null;
+            for (Map.Entry<String, Integer> search : counts.entrySet()) {
+                if (search.getValue() > maxOccurrences
+                        && !mostCommon.contains(search.getKey())) {
+                    maxOccurrences = search.getValue();
+                    mostOccurringSearch = search.getKey();
+                }
+            }
+            mostCommon.add(mostOccurringSearch);
+        }
+        long scanNanos = System.nanoTime() - start;
+
+        System.out.printf("zeitgeist distinct=%,d record=%,dns/search index=%,dns scan=%,dns%n",
+                counts.size(), recordNanos / distinct, indexNanos, scanNanos);
+    }
+
+    /**
+     * Searches for a page breadth first from the start page, the way getPath did before it
+     * searched from both ends.
+     */
+    private static void oneSidedSearch(WikiBackend wiki, String startPage, String stopPage) {
+        Set<String> visited = new HashSet<>();
+        Queue<String> queue = new ArrayDeque<>();
+        visited.add(startPage);
+        queue.add(startPage);
+        while (!queue.isEmpty()) {
+            for (String link : wiki.getLinksOnPage(queue.remove())) {
+                if (link.equals(stopPage)) {
+                    return;
+                }
+                if (visited.add(link)) {
+                    queue.add(link);
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks up links the way the earlier recursive getConnectedPages did.
+     */
+    private static void recursiveExpand(WikiBackend wiki, String title, int hops) {
+        if (hops <= 0) {
+            return;
+        }
+        wiki.getLinksOnPage(title);
+        for (String link : wiki.getLinksOnPage(title)) {
+            recursiveExpand(wiki, link, hops - 1);
+        }
+    }
+
+    /**
+     * @param wiki is not null
+     * @return a backend that passes every call to wiki, looking up batches one title at a time
+     */
+    private static WikiBackend perTitle(final WikiBackend wiki) {
+        return new WikiBackend() {
+            public List<String> search(String query, int limit) {
+                return wiki.search(query, limit);
+            }
+
+            public String getPageText(String title) {
+                return wiki.getPageText(title);
+            }
+
+            public List<String> getLinksOnPage(String title) {
+                return wiki.getLinksOnPage(title);
+            }
+
+            public List<String> whatLinksHere(String title) {
+                return wiki.whatLinksHere(title);
+            }
+
+            public List<String> getCategoryMembers(String category) {
+                return wiki.getCategoryMembers(category);
+            }
+
+            public List<String> getCategoriesOnPage(String title) {
+                return wiki.getCategoriesOnPage(title);
+            }
+
+            public String getLastEditor(String title) {
+                return wiki.getLastEditor(title);
+            }
+
+            public boolean exists(String title) {
+                return wiki.exists(title);
+            }
+
+            public long getRequestCount() {
+                return wiki.getRequestCount();
+            }
+        };
+    }
+
+    /**
+     * Generates text that looks like wikitext, with markup and a skewed vocabulary.
+     */
+    private static String wikitext(Random random, int length) {
+        String[] words = {"the", "of", "and", "in", "hockey", "season", "team", "league",
+            "player", "[[National Hockey League]]", "{{cite web", "|url=", "|title=",
+            "}}", "<ref>", "</ref>", "'''", "==", "Career", "statistics", "[[Category:",
+            "]]", "goal", "assist", "Pittsburgh", "Penguins", "1987", "2005", "|-", "|"};
+        StringBuilder text = new StringBuilder(length + 32);
+        while (text.length() < length) {
+            int index = (int) (Math.abs(random.nextGaussian()) * words.length / 3);
+            text.append(words[Math.min(index, words.length - 1)]);
+            text.append(random.nextInt(8) == 0 ? '\n' : ' ');
+            if (random.nextInt(20) == 0) {
+                text.append(random.nextInt(100_000));
+            }
+        }
+        return text.toString();
+    }
+}
@@ -4,20 +4,46 @@ import com.google.gson.JsonObject;
 import cpen221.mp3.cache.NotFoundException;
 import cpen221.mp3.server.WikiMediatorClient;
 import cpen221.mp3.server.WikiMediatorServer;
+import cpen221.mp3.wikimediator.Deadline;
+import cpen221.mp3.wikimediator.DeadlineExceededException;
 import cpen221.mp3.wikimediator.InvalidQueryException;
+import cpen221.mp3.wikimediator.PageStorage;
+import cpen221.mp3.wikimediator.StatsAccuracy;
+import cpen221.mp3.wikimediator.SyntheticWikiBackend;
+import cpen221.mp3.wikimediator.WikiBackend;
 import cpen221.mp3.wikimediator.WikiMediator;
 import cpen221.mp3.cache.Cache;
+import cpen221.mp3.cache.CacheLoader;
 import cpen221.mp3.cache.CacheObject;
+import cpen221.mp3.cache.CacheStats;
+import cpen221.mp3.cache.CompressedCacheObject;
+import cpen221.mp3.cache.DiskCache;
+import cpen221.mp3.cache.ExpiringCacheObject;
+import cpen221.mp3.cache.ExpiryScheduler;
+import cpen221.mp3.cache.OffHeapCache;
+import cpen221.mp3.cache.RemovalCause;
+import cpen221.mp3.cache.RemovalListener;
+import cpen221.mp3.cache.Weigher;
 import fastily.jwiki.core.Wiki;
 import org.junit.Test;
 
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.io.File;
 
 import static org.junit.Assert.*;
@@ -177,6 +203,49 @@ public class Tests {
         assertEquals(answer, wm.zeitgeist(5));
     }
 
+    @Test
+    public void zeitgeistTest5() {
+        WikiMediator wm = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN);
+        List<String> answer = new ArrayList<>();
+        wm.simpleSearch("Page 1", 0);
+        wm.getPage("Page 2");
+        wm.getPage("Page 3");
+        wm.getPage("Page 3");
+        wm.getPage("Page 2");
+        wm.simpleSearch("Page 1", 0);
+        wm.simpleSearch("Page 1", 0);
+        wm.getPage("Page 4");
+        answer.add("Page 1");
+        answer.add("Page 3");
+        answer.add("Page 2");
+        answer.add("Page 4");
+
+        assertEquals(answer, wm.zeitgeist(10));
+        assertEquals(answer.subList(0, 2), wm.zeitgeist(2));
+        assertEquals(new ArrayList<>(), wm.zeitgeist(0));
+    }
+
+    @Test
+    public void zeitgeistTest6() {
+        WikiMediator wm = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN);
+        for (int i = 0; i < 50; i++) {
+            for (int j = 0; j <= i; j++) {
+                wm.simpleSearch("query " + j, 0);
+            }
+        }
+        wm.writeStatsToFile();
+
+        WikiMediator wm1 = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN);
+        wm1.loadStatsFromFile();
+
+        assertEquals(wm.zeitgeist(10), wm1.zeitgeist(10));
+        assertEquals("query 0", wm1.zeitgeist(1).get(0));
+        assertEquals("query 9", wm1.zeitgeist(10).get(9));
+    }
+
     @Test
     public void trendingTest1() {
         WikiMediator wm = new WikiMediator(new Cache());
@@ -271,6 +340,84 @@ public class Tests {
         assertEquals(answer, wm.trending(5));
     }
 
+    @Test
+    public void trendingTest6() {
+        WikiMediator wm = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN);
+        wm.getPage("Page 1");
+        wm.simpleSearch("Page 2", 0);
+        wm.simpleSearch("Page 2", 0);
+        wm.getPage("Page 3");
+        wm.getPage("Page 3");
+        wm.getPage("Page 1");
+        wm.simpleSearch("Page 4", 0);
+        wm.writeStatsToFile();
+
+        List<String> answer = new ArrayList<>();
+        answer.add("Page 1");
+        answer.add("Page 2");
+        answer.add("Page 3");
+        answer.add("Page 4");
+        assertEquals(answer, wm.trending(10));
+        assertEquals(answer.subList(0, 2), wm.trending(2));
+
+        WikiMediator wm1 = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN);
+        wm1.loadStatsFromFile();
+        assertEquals(3, wm1.trending(3).size());
+        assertTrue(wm1.trending(4).containsAll(answer));
+    }
+
+    @Test
+    public void approximateStatsTest1() {
+        WikiMediator wm = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN, StatsAccuracy.approximate(0.001, 0.01));
+        for (int i = 0; i < 20000; i++) {
+            wm.simpleSearch("rare " + i, 0);
+            if (i % 10 == 0) {
+                wm.simpleSearch("query " + (i / 10) % 5, 0);
+            }
+            if (i % 80 == 0) {
+                wm.getPage("Page 7");
+            }
+        }
+
+        List<String> answer = new ArrayList<>();
+        answer.add("query 0");
+        answer.add("query 1");
+        answer.add("query 2");
+        answer.add("query 3");
+        answer.add("query 4");
+        answer.add("Page 7");
+        assertEquals(answer.size(), wm.zeitgeist(6).size());
+        assertTrue(wm.zeitgeist(6).containsAll(answer));
+        assertEquals("Page 7", wm.zeitgeist(6).get(5));
+        assertTrue(wm.trending(6).containsAll(answer));
+        assertEquals(new ArrayList<String>(), wm.zeitgeist(0));
+        assertEquals(new ArrayList<String>(), wm.trending(0));
+    }
+
+    @Test
+    public void approximateStatsTest2() {
+        WikiMediator wm = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN);
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j <= i; j++) {
+                wm.simpleSearch("query " + j, 0);
+            }
+        }
+        wm.writeStatsToFile();
+
+        WikiMediator wm1 = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN, StatsAccuracy.approximate(0.001, 0.01));
+        wm1.simpleSearch("other", 0);
+        wm1.loadStatsFromFile();
+
+        assertEquals(wm.zeitgeist(10), wm1.zeitgeist(10));
+        assertEquals(wm.zeitgeist(3), wm1.trending(3));
+        assertFalse(wm1.zeitgeist(11).contains("other"));
+    }
+
     @Test
     public void peakLoadTest1() {
         WikiMediator wm = new WikiMediator(new Cache());
@@ -417,6 +564,92 @@ public class Tests {
         assertEquals(9, wm.peakLoad30s());
     }
 
+    @Test
+    public void peakLoadTest8() {
+        WikiMediator wm = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN);
+        for (int i = 0; i < 1000; i++) {
+            wm.simpleSearch("query " + i, 0);
+        }
+        assertEquals(1001, wm.peakLoad30s());
+        wm.zeitgeist(5);
+        assertEquals(1003, wm.peakLoad30s());
+        wm.writeStartTimeToFile();
+        wm.writeRequestsToFile();
+
+        WikiMediator wm1 = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN);
+        wm1.getPage("Page 1");
+        wm1.loadStartTimeFromFile();
+        wm1.loadRequestsFromFile();
+        assertEquals(1004, wm1.peakLoad30s());
+    }
+
+    @Test
+    public void peakLoadTest9() {
+        WikiMediator wm = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN);
+        for (int i = 0; i < 50; i++) {
+            wm.simpleSearch("query " + i % 2, 0);
+        }
+        try {
+            TimeUnit.SECONDS.sleep(31);
+        } catch (InterruptedException e) {
+            fail();
+        }
+        wm.simpleSearch("query 2", 0);
+        wm.simpleSearch("query 2", 0);
+        assertEquals(50, wm.peakLoad30s());
+        wm.writeStartTimeToFile();
+        wm.writeRequestsToFile();
+        wm.writeStatsToFile();
+
+        WikiMediator wm1 = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN);
+        wm1.loadStartTimeFromFile();
+        wm1.loadRequestsFromFile();
+        wm1.loadStatsFromFile();
+        assertEquals(50, wm1.peakLoad30s());
+        assertEquals(wm.zeitgeist(3), wm1.zeitgeist(3));
+        assertEquals(Collections.singletonList("query 2"), wm1.trending(3));
+    }
+
+    @Test
+    public void peakLoadTest10() throws IOException {
+        // files written before times were kept in timelines hold lists of times
+        LocalDateTime start = LocalDateTime.now().minusSeconds(10);
+        Map<String, List<LocalDateTime>> searches = new HashMap<>();
+        searches.put("query 1", new ArrayList<>());
+        searches.put("query 2", new ArrayList<>());
+        Map<String, List<LocalDateTime>> requests = new HashMap<>();
+        requests.put("simpleSearch", new ArrayList<>());
+        for (int i = 0; i < 20; i++) {
+            LocalDateTime time = start.plusSeconds(1 + i % 5);
+            searches.get(i < 15 ? "query 2" : "query 1").add(time);
+            requests.get("simpleSearch").add(time);
+        }
+        writeObject("local/startTimeFile", start);
+        writeObject("local/timeMapFile", searches);
+        writeObject("local/requestMapFile", requests);
+
+        WikiMediator wm = new WikiMediator(new SyntheticWikiBackend(221, 100, 0),
+                PageStorage.PLAIN);
+        wm.loadRequestsFromFile();
+        wm.loadStatsFromFile();
+        wm.loadStartTimeFromFile();
+        assertEquals(Arrays.asList("query 2", "query 1"), wm.zeitgeist(5));
+        assertEquals(Arrays.asList("query 2", "query 1"), wm.trending(5));
+        assertEquals(23, wm.peakLoad30s());
+        wm.simpleSearch("query 1", 0);
+        assertEquals(25, wm.peakLoad30s());
+    }
+
+    private static void writeObject(String fileName, Object object) throws IOException {
+        ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(fileName));
+        oos.writeObject(object);
+        oos.close();
+    }
+
     @Test
     public void putTest1() {
         Cache cache = new Cache();
@@ -482,6 +715,567 @@ public class Tests {
         assertFalse(cache.put(co1));
     }
 
+    @Test
+    public void putTest7() throws NotFoundException {
+        Cache cache = new Cache(3, 30);
+        CacheObject co = new CacheObject("hockey", "aa");
+        CacheObject co1 = new CacheObject("soccer", "aa");
+        CacheObject co2 = new CacheObject("ultimate", "aa");
+        CacheObject co3 = new CacheObject("tennis", "aa");
+        cache.put(co);
+        cache.put(co1);
+        cache.put(co2);
+        cache.get(co.id());
+        cache.touch(co1.id());
+
+        assertTrue(cache.put(co3));
+        assertEquals(co, cache.get(co.id()));
+        assertEquals(co2, cache.get(co2.id()));
+        assertFalse(cache.touch(co1.id()));
+    }
+
+    @Test
+    public void weightTest1() throws NotFoundException {
+        Cache<CacheObject> cache = new Cache<>(170, 30, CacheObject.TEXT_WEIGHER, false);
+        CacheObject co = new CacheObject("hockey", "aaaa");
+        CacheObject co1 = new CacheObject("soccer", "aaaa");
+        CacheObject co2 = new CacheObject("ultimate", "aaaaaaaa");
+        assertTrue(cache.put(co));
+        assertTrue(cache.put(co1));
+        cache.get(co.id());
+
+        assertTrue(cache.put(co2));
+        assertEquals(co2, cache.get(co2.id()));
+        assertFalse(cache.touch(co.id()));
+        assertFalse(cache.touch(co1.id()));
+    }
+
+    @Test
+    public void weightTest2() throws NotFoundException {
+        Cache<CacheObject> cache = new Cache<>(90, 30, CacheObject.TEXT_WEIGHER, true);
+        CacheObject co = new CacheObject("hockey", "aaaa");
+        CacheObject co1 = new CacheObject("soccer", "aaaaaaaaaaaa");
+        assertTrue(cache.put(co));
+        assertFalse(cache.put(co1));
+        assertEquals(co, cache.get(co.id()));
+    }
+
+    @Test
+    public void weightTest3() throws NotFoundException {
+        // missing pages have empty text, they still take up room and are evicted
+        Cache<CacheObject> cache = new Cache<>(1000, 30, CacheObject.TEXT_WEIGHER, false);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(cache.put(new CacheObject("missing" + i, "")));
+        }
+        assertEquals("", cache.get("missing999").getText());
+        assertFalse(cache.touch("missing0"));
+        assertTrue(cache.stats().evictionCount() > 900);
+        assertTrue(CacheObject.TEXT_WEIGHER.weigh(new CacheObject("", null)) >= 1);
+        assertTrue(CompressedCacheObject.SIZE_WEIGHER.weigh(
+                new CompressedCacheObject("", null)) >= 1);
+    }
+
+    @Test
+    public void compressedTest1() throws NotFoundException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("{{Infobox ice hockey player | name = Sidney Crosby }} [[Hockey]] ");
+        }
+        Cache<CompressedCacheObject> cache = new Cache<>(4096, 30,
+                CompressedCacheObject.SIZE_WEIGHER, false);
+        CompressedCacheObject co = new CompressedCacheObject("hockey", text.toString());
+        CacheObject plain = new CacheObject("hockey", text.toString());
+
+        assertTrue(cache.put(co));
+        assertEquals(text.toString(), cache.get("hockey").getText());
+        assertTrue(CompressedCacheObject.SIZE_WEIGHER.weigh(co)
+                < CacheObject.TEXT_WEIGHER.weigh(plain) / 4);
+    }
+
+    @Test
+    public void compressedTest2() {
+        CompressedCacheObject co = new CompressedCacheObject("hockey", "h\u00f6ckey \u2603");
+        CompressedCacheObject co1 = new CompressedCacheObject("soccer", "");
+        assertEquals("h\u00f6ckey \u2603", co.getText());
+        assertEquals("", co1.getText());
+    }
+
+    @Test
+    public void removalTest1() throws InterruptedException {
+        final List<RemovalCause> causes = Collections.synchronizedList(new ArrayList<>());
+        Cache<CacheObject> cache = new Cache<>(2, 1, Weigher.singletonWeigher(),
+                ExpiryScheduler.shared(), false, new RemovalListener<CacheObject>() {
+                    @Override
+                    public void onRemoval(CacheObject co, RemovalCause cause) {
+                        causes.add(cause);
+                    }
+                });
+
+        cache.put(new CacheObject("hockey", "aa"));
+        cache.put(new CacheObject("hockey", "bb"));
+        cache.put(new CacheObject("soccer", "cc"));
+        cache.put(new CacheObject("tennis", "dd"));
+        assertEquals(2, causes.size());
+        assertEquals(RemovalCause.REPLACED, causes.get(0));
+        assertEquals(RemovalCause.EVICTED, causes.get(1));
+
+        TimeUnit.MILLISECONDS.sleep(1500);
+        assertFalse(cache.touch("soccer"));
+        assertFalse(cache.touch("tennis"));
+        assertEquals(4, causes.size());
+        assertEquals(RemovalCause.EXPIRED, causes.get(2));
+        assertEquals(RemovalCause.EXPIRED, causes.get(3));
+    }
+
+    @Test
+    public void offHeapTest1() throws NotFoundException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("[[H\u00f6ckey]] ");
+        }
+        OffHeapCache cache = new OffHeapCache(1024 * 1024, 30, true);
+
+        assertTrue(cache.put(new CacheObject("hockey", text.toString())));
+        assertTrue(cache.put(new CacheObject("soccer", null)));
+        assertTrue(cache.put(new CacheObject("tennis", "")));
+        assertEquals(text.toString(), cache.get("hockey").getText());
+        assertNull(cache.get("soccer").getText());
+        assertEquals("", cache.get("tennis").getText());
+
+        assertTrue(cache.update(new CacheObject("hockey", "aa")));
+        assertFalse(cache.update(new CacheObject("golf", "aa")));
+        assertEquals("aa", cache.get("hockey").getText());
+    }
+
+    @Test
+    public void offHeapTest2() throws NotFoundException {
+        OffHeapCache cache = new OffHeapCache(8192, 30, false);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(cache.put(new CacheObject("page" + i, "page text " + i)));
+        }
+        assertFalse(cache.put(new CacheObject("big", new String(new char[10000]))));
+
+        assertEquals("page text 999", cache.get("page999").getText());
+        assertEquals("page text 998", cache.get("page998").getText());
+        try {
+            cache.get("page997");
+            fail();
+        } catch (NotFoundException e) {
+            // evicted, the two most recent pages fill the cache
+        }
+        assertEquals(4 * 1024 * 1024, cache.offHeapBytes());
+    }
+
+    @Test
+    public void offHeapTest3() throws NotFoundException {
+        OffHeapCache cache = new OffHeapCache(8192, 30, true);
+        final AtomicInteger loads = new AtomicInteger();
+        CacheLoader<CacheObject> wiki = new CacheLoader<CacheObject>() {
+            @Override
+            public CacheObject load(String id) {
+                loads.incrementAndGet();
+                if (id.equals("big")) {
+                    return new CacheObject(id, new String(new char[10000]));
+                }
+                return new CacheObject(id, "text of " + id);
+            }
+        };
+
+        assertEquals("text of hockey", cache.get("hockey", wiki).getText());
+        assertEquals("text of hockey", cache.get("hockey", wiki).getText());
+        assertEquals("text of hockey", cache.get("hockey").getText());
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.stats().missCount());
+
+        assertEquals(10000, cache.get("big", wiki).getText().length());
+        assertEquals(10000, cache.get("big", wiki).getText().length());
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void offHeapTest4() throws NotFoundException {
+        OffHeapCache cache = new OffHeapCache(4 * 1024 * 1024, 30, true);
+        assertFalse(cache.put(new CacheObject("big", new String(new char[5 * 1024 * 1024]))));
+        assertEquals(0, cache.offHeapBytes());
+
+        for (int i = 0; i < 2000; i++) {
+            assertTrue(cache.put(new CacheObject("page" + i, "page text " + i)));
+        }
+        assertTrue(cache.put(new CacheObject("page1999", "page text")));
+        assertEquals("page text", cache.get("page1999").getText());
+        assertEquals("page text 1998", cache.get("page1998").getText());
+        assertEquals(4 * 1024 * 1024, cache.offHeapBytes());
+    }
+
+    @Test
+    public void offHeapTest5() throws NotFoundException {
+        OffHeapCache cache = new OffHeapCache(8192, 30, false);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(cache.put(new CacheObject("missing" + i, i % 2 == 0 ? "" : null)));
+        }
+        assertNull(cache.get("missing99").getText());
+        assertEquals("", cache.get("missing98").getText());
+        assertFalse(cache.touch("missing97"));
+        assertEquals(98, cache.stats().evictionCount());
+    }
+
+    @Test
+    public void offHeapTest6() throws InterruptedException {
+        final OffHeapCache cache = new OffHeapCache(8192, 30, true);
+        final AtomicInteger loads = new AtomicInteger();
+        final CacheLoader<CacheObject> wiki = new CacheLoader<CacheObject>() {
+            @Override
+            public CacheObject load(String id) {
+                loads.incrementAndGet();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new CacheObject(id, new String(new char[10000]));
+            }
+        };
+        final List<String> texts = Collections.synchronizedList(new ArrayList<>());
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        texts.add(cache.get("big", wiki).getText());
+                    } catch (NotFoundException e) {
+                        // texts is left short
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // the page is too large to keep, but threads that missed together share its load
+        assertEquals(1, loads.get());
+        assertEquals(8, texts.size());
+        for (String text : texts) {
+            assertEquals(10000, text.length());
+        }
+    }
+
+    @Test
+    public void diskTest1() throws IOException, NotFoundException {
+        File file = File.createTempFile("pageStore", null);
+        file.deleteOnExit();
+        DiskCache cache = DiskCache.open(file, 1024 * 1024, 30);
+
+        assertTrue(cache.put(new CacheObject("hockey", "h\u00f6ckey")));
+        assertTrue(cache.put(new CacheObject("soccer", null)));
+        assertFalse(cache.put(new CacheObject("hockey", "aa")));
+        assertSame(cache, DiskCache.open(file, 1024 * 1024, 30));
+        cache.close();
+
+        DiskCache reopened = DiskCache.open(file, 1024 * 1024, 30);
+        assertEquals(2, reopened.size());
+        assertEquals("h\u00f6ckey", reopened.get("hockey").getText());
+        assertNull(reopened.get("soccer").getText());
+        reopened.close();
+    }
+
+    @Test
+    public void diskTest4() throws IOException, NotFoundException {
+        File file = File.createTempFile("pageStore", null);
+        file.deleteOnExit();
+        DiskCache cache = DiskCache.open(file, 1024 * 1024, 30);
+
+        assertTrue(cache.put(new CacheObject("hockey", "aa")));
+        assertTrue(cache.replace(new CacheObject("hockey", "bb")));
+        assertTrue(cache.replace(new CacheObject("soccer", "cc")));
+        assertEquals("bb", cache.get("hockey").getText());
+        cache.close();
+
+        DiskCache reopened = DiskCache.open(file, 1024 * 1024, 30);
+        assertEquals(2, reopened.size());
+        assertEquals("bb", reopened.get("hockey").getText());
+        assertEquals("cc", reopened.get("soccer").getText());
+        reopened.close();
+    }
+
+    @Test
+    public void diskTest2() throws IOException, InterruptedException, NotFoundException {
+        File file = File.createTempFile("pageStore", null);
+        file.deleteOnExit();
+        DiskCache cache = DiskCache.open(file, 4096, 1);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(cache.put(new CacheObject("page" + i, "page text " + i)));
+        }
+        assertTrue(file.length() <= 2 * 4096);
+        assertEquals("page text 999", cache.get("page999").getText());
+        try {
+            cache.get("page0");
+            fail();
+        } catch (NotFoundException e) {
+            // dropped, the oldest pages go first
+        }
+
+        TimeUnit.MILLISECONDS.sleep(1500);
+        try {
+            cache.get("page999");
+            fail();
+        } catch (NotFoundException e) {
+            // expired
+        }
+        assertEquals(0, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void diskTest3() throws IOException, NotFoundException {
+        File file = File.createTempFile("pageStore", null);
+        file.deleteOnExit();
+        // compaction writes to this path, so it fails while a directory is there
+        File compacted = new File(file.getPath() + ".tmp");
+        assertTrue(compacted.mkdir());
+        compacted.deleteOnExit();
+        DiskCache cache = DiskCache.open(file, 4096, 30);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(cache.put(new CacheObject("page" + i, "page text " + i)));
+        }
+        assertTrue(file.length() > 2 * 4096);
+        assertEquals("page text 999", cache.get("page999").getText());
+
+        // the last failed compaction is not retried until the file grows by another 4096 bytes
+        assertTrue(compacted.delete());
+        long failedAt = file.length();
+        assertTrue(cache.put(new CacheObject("page1000", "page text 1000")));
+        assertTrue(file.length() > failedAt);
+        int i = 1001;
+        while (file.length() > 2 * 4096) {
+            assertTrue(file.length() <= failedAt + 4096);
+            assertTrue(cache.put(new CacheObject("page" + i, "page text " + i)));
+            i++;
+        }
+        assertEquals("page text " + (i - 1), cache.get("page" + (i - 1)).getText());
+        cache.close();
+    }
+
+    @Test
+    public void diskTest5() throws IOException, InterruptedException, NotFoundException {
+        File file = File.createTempFile("pageStore", null);
+        file.deleteOnExit();
+        final DiskCache diskCache = DiskCache.open(file, 1024 * 1024, 1);
+        assertTrue(diskCache.put(new CacheObject("hockey", "aa")));
+
+        CacheLoader<CacheObject> loader = new CacheLoader<CacheObject>() {
+            private ExpiringCacheObject loaded;
+
+            @Override
+            public CacheObject load(String id) throws NotFoundException {
+                this.loaded = diskCache.get(id);
+                return this.loaded;
+            }
+
+            @Override
+            public long lifetimeNanos(String id, long timeoutNanos) {
+                return this.loaded.lifetimeNanos(timeoutNanos);
+            }
+        };
+
+        Cache<CacheObject> cache = new Cache<>(4, 30, false);
+        OffHeapCache offHeapCache = new OffHeapCache(1024 * 1024, 30, false);
+        assertEquals("aa", cache.get("hockey", loader).getText());
+        assertEquals("aa", offHeapCache.get("hockey", loader).getText());
+
+        Thread.sleep(1500);
+        assertFalse(offHeapCache.touch("hockey"));
+        try {
+            cache.get("hockey");
+            fail();
+        } catch (NotFoundException e) {
+            // the page expired with its disk copy, not 30s after it was read
+        }
+        diskCache.close();
+    }
+
+    @Test
+    public void statsTest1() throws InterruptedException, NotFoundException {
+        Cache<CacheObject> cache = new Cache<>(2, 1, true);
+        cache.put(new CacheObject("hockey", "aa"));
+        cache.put(new CacheObject("hockey", "bb"));
+        cache.put(new CacheObject("soccer", "cc"));
+        cache.put(new CacheObject("tennis", "dd"));
+        cache.get("tennis");
+        cache.get("tennis");
+        cache.get("soccer");
+        try {
+            cache.get("hockey");
+            fail();
+        } catch (NotFoundException e) {
+            // evicted
+        }
+        cache.recordLoad(1000);
+        cache.recordLoad(3000);
+
+        CacheStats stats = cache.stats();
+        assertEquals(3, stats.hitCount());
+        assertEquals(1, stats.missCount());
+        assertEquals(0.75, stats.hitRate(), 0.0001);
+        assertEquals(4, stats.putCount());
+        assertEquals(1, stats.replacementCount());
+        assertEquals(1, stats.evictionCount());
+        assertEquals(0, stats.expirationCount());
+        assertEquals(2000, stats.averageLoadPenalty(), 0.0001);
+
+        TimeUnit.MILLISECONDS.sleep(1500);
+        assertEquals(2, cache.stats().expirationCount());
+        assertEquals(3, stats.hitCount());
+    }
+
+    @Test
+    public void loaderTest1() throws InterruptedException, NotFoundException {
+        final Cache<CacheObject> cache = new Cache<>(32, 30, true);
+        final AtomicInteger loads = new AtomicInteger();
+        final CacheLoader<CacheObject> slowWiki = new CacheLoader<CacheObject>() {
+            @Override
+            public CacheObject load(String id) {
+                loads.incrementAndGet();
+                try {
+                    TimeUnit.MILLISECONDS.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new CacheObject(id, "text of " + id);
+            }
+        };
+        final List<String> texts = Collections.synchronizedList(new ArrayList<>());
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        texts.add(cache.get("hockey", slowWiki).getText());
+                    } catch (NotFoundException e) {
+                        fail();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(8, texts.size());
+        for (String text : texts) {
+            assertEquals("text of hockey", text);
+        }
+        assertEquals("text of hockey", cache.get("hockey").getText());
+        assertEquals(1, cache.stats().loadCount());
+    }
+
+    @Test
+    public void loaderTest2() throws InterruptedException {
+        final Cache<CacheObject> cache = new Cache<>(32, 30, false);
+        final AtomicInteger loads = new AtomicInteger();
+        final AtomicInteger notFound = new AtomicInteger();
+        final CacheLoader<CacheObject> missingWiki = new CacheLoader<CacheObject>() {
+            @Override
+            public CacheObject load(String id) throws NotFoundException {
+                loads.incrementAndGet();
+                try {
+                    TimeUnit.MILLISECONDS.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new NotFoundException();
+            }
+        };
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        cache.get("hockey", missingWiki);
+                    } catch (NotFoundException e) {
+                        notFound.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(4, notFound.get());
+        assertFalse(cache.touch("hockey"));
+    }
+
+    @Test
+    public void refreshTest1() throws InterruptedException, NotFoundException {
+        ExecutorService refresher = Executors.newSingleThreadExecutor();
+        Cache<CacheObject> cache = new Cache<>(32, 2, Weigher.singletonWeigher(),
+                ExpiryScheduler.shared(), true, null, 1, refresher);
+        final AtomicInteger loads = new AtomicInteger();
+        CacheLoader<CacheObject> wiki = new CacheLoader<CacheObject>() {
+            @Override
+            public CacheObject load(String id) {
+                return new CacheObject(id, "version " + loads.incrementAndGet());
+            }
+        };
+
+        assertEquals("version 1", cache.get("hockey", wiki).getText());
+        assertEquals("version 1", cache.get("hockey", wiki).getText());
+        assertEquals(1, loads.get());
+
+        TimeUnit.MILLISECONDS.sleep(1200);
+        assertEquals("version 1", cache.get("hockey", wiki).getText());
+        TimeUnit.MILLISECONDS.sleep(300);
+        assertEquals(2, loads.get());
+        assertEquals("version 2", cache.get("hockey").getText());
+
+        TimeUnit.MILLISECONDS.sleep(1000);
+        assertEquals("version 2", cache.get("hockey").getText());
+        assertEquals(0, cache.stats().expirationCount());
+        refresher.shutdown();
+    }
+
+    @Test
+    public void refreshTest2() throws InterruptedException, NotFoundException {
+        ExecutorService refresher = Executors.newSingleThreadExecutor();
+        Cache<CacheObject> cache = new Cache<>(32, 2, Weigher.singletonWeigher(),
+                ExpiryScheduler.shared(), true, null, 1, refresher);
+        CacheLoader<CacheObject> disk = new CacheLoader<CacheObject>() {
+            @Override
+            public CacheObject load(String id) {
+                return new CacheObject(id, "from disk");
+            }
+
+            @Override
+            public CacheObject reload(String id, CacheObject old) {
+                return new CacheObject(id, "from wiki");
+            }
+        };
+
+        assertEquals("from disk", cache.get("hockey", disk).getText());
+        TimeUnit.MILLISECONDS.sleep(1200);
+        assertEquals("from disk", cache.get("hockey", disk).getText());
+        TimeUnit.MILLISECONDS.sleep(300);
+        assertEquals("from wiki", cache.get("hockey").getText());
+        refresher.shutdown();
+    }
+
     @Test
     public void getTest1() throws NotFoundException {
         Cache cache = new Cache();
@@ -530,6 +1324,26 @@ public class Tests {
         assertEquals(co1, cache.get(co1.id()));
     }
 
+    @Test
+    public void getTest5() throws NotFoundException {
+        Cache cache = new Cache(2, 30);
+        CacheObject co = new CacheObject("hockey", "aa");
+        CacheObject co1 = new CacheObject("hockey", "bb");
+        cache.put(co);
+        assertTrue(cache.put(co1));
+        assertEquals(co1, cache.get("hockey"));
+    }
+
+    @Test
+    public void getTest6() throws NotFoundException {
+        Cache cache = new Cache(4096, 30);
+        for (int i = 0; i < 4096; i++) {
+            cache.put(new CacheObject("page" + i, "aa"));
+        }
+        assertEquals("page4095", cache.get("page4095").id());
+        assertTrue(cache.touch("page0"));
+    }
+
     @Test
     public void touchTest1() {
         Cache cache = new Cache();
@@ -559,6 +1373,140 @@ public class Tests {
         assertFalse(cache.touch(co1.id()));
     }
 
+    @Test
+    public void expiryTest1() throws NotFoundException {
+        ExpiryScheduler scheduler = new ExpiryScheduler();
+        Cache cache = new Cache(2, 2, scheduler);
+        CacheObject co = new CacheObject("hockey", "aa");
+        cache.put(co);
+        try {
+            TimeUnit.MILLISECONDS.sleep(1500);
+            assertTrue(cache.touch(co.id()));
+            TimeUnit.MILLISECONDS.sleep(1500);
+        } catch (InterruptedException e) {
+            fail();
+        }
+        assertEquals(co, cache.get(co.id()));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void expiryTest2() {
+        ExpiryScheduler scheduler = new ExpiryScheduler();
+        Cache cache = new Cache(2, 1, scheduler);
+        CacheObject co = new CacheObject("hockey", "aa");
+        cache.put(co);
+        scheduler.shutdown();
+        try {
+            TimeUnit.SECONDS.sleep(2);
+        } catch (InterruptedException e) {
+            fail();
+        }
+        assertFalse(scheduler.isRunning());
+        assertFalse(cache.touch(co.id()));
+    }
+
+    @Test
+    public void expiryTest3() throws InterruptedException {
+        ExpiryScheduler scheduler = new ExpiryScheduler();
+        Cache<CacheObject> failing = new Cache<>(2, 1, Weigher.singletonWeigher(), scheduler,
+                false, new RemovalListener<CacheObject>() {
+                    @Override
+                    public void onRemoval(CacheObject co, RemovalCause cause) {
+                        throw new IllegalStateException("listener failed");
+                    }
+                });
+        final List<RemovalCause> causes = Collections.synchronizedList(new ArrayList<>());
+        Cache<CacheObject> cache = new Cache<>(2, 2, Weigher.singletonWeigher(), scheduler,
+                false, new RemovalListener<CacheObject>() {
+                    @Override
+                    public void onRemoval(CacheObject co, RemovalCause cause) {
+                        causes.add(cause);
+                    }
+                });
+        failing.put(new CacheObject("hockey", "aa"));
+        cache.put(new CacheObject("soccer", "bb"));
+
+        TimeUnit.MILLISECONDS.sleep(2500);
+        assertTrue(scheduler.isRunning());
+        assertEquals(Collections.singletonList(RemovalCause.EXPIRED), causes);
+        scheduler.shutdown();
+    }
+
+    @Test (expected = NotFoundException.class)
+    public void concurrentTest1() throws NotFoundException {
+        Cache cache = new Cache(2, 30, true);
+        CacheObject co = new CacheObject("hockey", "aa");
+        CacheObject co1 = new CacheObject("soccer", "aa");
+        CacheObject co2 = new CacheObject("ultimate", "aa");
+        cache.put(co);
+        cache.put(co1);
+        assertEquals(co, cache.get(co.id()));
+
+        cache.put(co2);
+        assertEquals(co, cache.get(co.id()));
+        assertTrue(cache.touch(co2.id()));
+        cache.get(co1.id());
+    }
+
+    @Test
+    public void concurrentTest2() throws InterruptedException {
+        Cache cache = new Cache(64, 30, true);
+        for (int i = 0; i < 64; i++) {
+            cache.put(new CacheObject("page" + i, "aa"));
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        List<Integer> misses = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        try {
+                            cache.get("page" + (i % 64));
+                        } catch (NotFoundException e) {
+                            misses.add(i);
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(misses.isEmpty());
+        assertTrue(cache.put(new CacheObject("page64", "aa")));
+    }
+
+    @Test
+    public void allocationTest1() throws NotFoundException {
+        Cache<CacheObject> cache = new Cache<>(64, 30, true);
+        String[] ids = new String[64];
+        for (int i = 0; i < 64; i++) {
+            ids[i] = "page" + i;
+            cache.put(new CacheObject(ids[i], "aa"));
+        }
+        // warms up the JIT so only the steady state of a hit is measured
+        for (int i = 0; i < 1000000; i++) {
+            cache.get(ids[i & 63]);
+        }
+
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = bean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100000; i++) {
+            cache.get(ids[i & 63]);
+        }
+        long allocated = bean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(allocated < 1024);
+    }
+
     @Test
     public void updateTest1() {
         Cache cache = new Cache();
@@ -734,6 +1682,339 @@ public class Tests {
         assertEquals(answer, wm.getPath("Elon Musk", "Sidney Crosby"));
     }
 
+    @Test
+    public void syntheticTest1() {
+        SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, 1000, 0);
+        SyntheticWikiBackend sameWiki = new SyntheticWikiBackend(221, 1000, 0);
+
+        assertEquals(wiki.getPageText("Page 5"), sameWiki.getPageText("Page 5"));
+        assertEquals(wiki.getLinksOnPage("Page 5"), sameWiki.getLinksOnPage("Page 5"));
+        assertTrue(wiki.getLinksOnPage("Page 5").contains("Page 6"));
+        assertTrue(wiki.getLinksOnPage("Page 999").contains("Page 0"));
+        for (String category : wiki.getCategoriesOnPage("Page 5")) {
+            assertTrue(wiki.getCategoryMembers(category).contains("Page 5"));
+        }
+        assertTrue(wiki.exists("Page 5"));
+        assertFalse(wiki.exists("Page 1000"));
+        assertEquals("", wiki.getPageText("Page 1000"));
+        assertTrue(wiki.getLinksOnPage("Page 1000").isEmpty());
+        assertNull(wiki.getLastEditor("Page 1000"));
+        assertEquals(11, wiki.search("Page 99", 20).size());
+        assertEquals(2, wiki.search("Page 99", 2).size());
+    }
+
+    @Test
+    public void syntheticTest2() throws InterruptedException {
+        final SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, 1000, 200);
+        final WikiMediator wm = new WikiMediator(wiki, PageStorage.PLAIN);
+        final List<String> texts = Collections.synchronizedList(new ArrayList<>());
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    texts.add(wm.getPage("Page 42"));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, wiki.getRequestCount());
+        assertEquals(8, texts.size());
+        for (String text : texts) {
+            assertEquals(new SyntheticWikiBackend(221, 1000, 0).getPageText("Page 42"), text);
+        }
+    }
+
+    @Test
+    public void syntheticTest4() throws InterruptedException {
+        final SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, 1000, 200);
+        final WikiMediator wm = new WikiMediator(wiki, PageStorage.OFF_HEAP);
+        final List<String> texts = Collections.synchronizedList(new ArrayList<>());
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    texts.add(wm.getPage("Page 42"));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, wiki.getRequestCount());
+        assertEquals(8, texts.size());
+        for (String text : texts) {
+            assertEquals(new SyntheticWikiBackend(221, 1000, 0).getPageText("Page 42"), text);
+        }
+    }
+
+    @Test
+    public void syntheticTest3() {
+        SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, 1000, 0);
+        WikiMediator wm = new WikiMediator(wiki, PageStorage.COMPRESSED);
+        List<String> answer = wiki.getCategoryMembers("Category:Group 3");
+        Collections.reverse(answer);
+
+        assertEquals(answer, wm.executeQuery("get page where category is 'Group 3'"));
+        assertEquals(wiki.search("Page 7", 5), wm.simpleSearch("Page 7", 5));
+    }
+
+    @Test
+    public void batchTest1() {
+        SyntheticWikiBackend batched = new SyntheticWikiBackend(221, 1000, 0);
+        SyntheticWikiBackend single = new SyntheticWikiBackend(221, 1000, 0);
+        WikiMediator batchedWm = new WikiMediator(batched, PageStorage.PLAIN);
+        WikiMediator singleWm = new WikiMediator(perTitle(single), PageStorage.PLAIN);
+
+        assertEquals(singleWm.getConnectedPages("Page 0", 2),
+                batchedWm.getConnectedPages("Page 0", 2));
+        assertEquals(singleWm.getPath("Page 0", "Page 500").size(),
+                batchedWm.getPath("Page 0", "Page 500").size());
+        String query = "get author where (category is 'Group 3' and author is 'Editor 7')";
+        assertEquals(singleWm.executeQuery(query), batchedWm.executeQuery(query));
+        assertTrue(batched.getRequestCount() * 5 < single.getRequestCount());
+    }
+
+    @Test
+    public void batchTest2() {
+        final SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, 1000, 200);
+        final WikiMediator wm = new WikiMediator(wiki, PageStorage.PLAIN);
+        SyntheticWikiBackend single = new SyntheticWikiBackend(221, 1000, 0);
+        final List<String> answer = new WikiMediator(single, PageStorage.PLAIN)
+                .getConnectedPages("Page 0", 1);
+        final List<List<String>> results = Collections.synchronizedList(new ArrayList<>());
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    results.add(wm.getConnectedPages("Page 0", 1));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                fail();
+            }
+        }
+
+        assertEquals(single.getRequestCount(), wiki.getRequestCount());
+        assertEquals(Collections.nCopies(8, answer), results);
+    }
+
+    @Test
+    public void linkGraphTest1() {
+        SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, 1000, 0);
+        WikiMediator wm = new WikiMediator(wiki, PageStorage.PLAIN);
+        List<String> connected = wm.getConnectedPages("Page 0", 2);
+        long requests = wiki.getRequestCount();
+
+        assertEquals(connected, wm.getConnectedPages("Page 0", 2));
+        assertFalse(wm.getConnectedPages("Page 1", 1).isEmpty());
+        assertEquals(requests, wiki.getRequestCount());
+
+        // the path to a page next to the start page only needs links that are cached
+        List<String> path = wm.getPath("Page 0", "Page 1");
+        assertEquals(2, path.size());
+        assertEquals(requests, wiki.getRequestCount());
+
+        WikiMediator fresh = new WikiMediator(new SyntheticWikiBackend(221, 1000, 0),
+                PageStorage.PLAIN);
+        assertEquals(fresh.getConnectedPages("Page 0", 2), connected);
+        assertEquals(fresh.getPath("Page 0", "Page 1"), path);
+    }
+
+    @Test
+    public void connectedPagesTest1() {
+        SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, 20, 0);
+        WikiMediator wm = new WikiMediator(perTitle(wiki), PageStorage.PLAIN);
+
+        // page i links to page i + 1, so every page is reached within 19 hops
+        assertEquals(20, wm.getConnectedPages("Page 0", 30).size());
+        assertTrue(wiki.getRequestCount() <= 20);
+        assertEquals(Collections.singletonList("Page 0"), wm.getConnectedPages("Page 0", 0));
+    }
+
+    @Test
+    public void connectedPagesTest2() {
+        SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, 2000, 0);
+        WikiMediator wm = new WikiMediator(wiki, PageStorage.PLAIN);
+
+        Set<String> answer = new HashSet<>();
+        answer.add("Page 7");
+        List<String> frontier = Collections.singletonList("Page 7");
+        for (int hop = 0; hop < 3; hop++) {
+            List<String> nextLevel = new ArrayList<>();
+            for (String title : frontier) {
+                for (String link : wiki.getLinksOnPage(title)) {
+                    if (answer.add(link)) {
+                        nextLevel.add(link);
+                    }
+                }
+            }
+            frontier = nextLevel;
+        }
+        List<String> sorted = new ArrayList<>(answer);
+        Collections.sort(sorted);
+
+        // the third level has several batches, which are looked up in parallel
+        assertTrue(frontier.size() > 100);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(sorted, wm.getConnectedPages("Page 7", 3));
+        }
+    }
+
+    @Test
+    public void pathTest1() {
+        SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, 5000, 0);
+        WikiMediator wm = new WikiMediator(wiki, PageStorage.PLAIN);
+
+        for (int stop = 100; stop < 5000; stop += 700) {
+            String stopPage = "Page " + stop;
+            List<String> path = wm.getPath("Page 0", stopPage);
+
+            // a one sided breadth first search finds the length of a shortest path
+            Set<String> visited = new HashSet<>();
+            visited.add("Page 0");
+            List<String> frontier = Collections.singletonList("Page 0");
+            int hops = 0;
+            while (!visited.contains(stopPage)) {
+                List<String> nextLevel = new ArrayList<>();
+                for (String title : frontier) {
+                    for (String link : wiki.getLinksOnPage(title)) {
+                        if (visited.add(link)) {
+                            nextLevel.add(link);
+                        }
+                    }
+                }
+                frontier = nextLevel;
+                hops++;
+            }
+
+            assertEquals(hops + 1, path.size());
+            assertEquals("Page 0", path.get(0));
+            assertEquals(stopPage, path.get(path.size() - 1));
+            for (int i = 0; i + 1 < path.size(); i++) {
+                assertTrue(wiki.getLinksOnPage(path.get(i)).contains(path.get(i + 1)));
+            }
+        }
+    }
+
+    @Test
+    public void pathTest2() {
+        SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, 5000, 0);
+        WikiMediator wm = new WikiMediator(wiki, PageStorage.PLAIN);
+
+        assertEquals(new ArrayList<>(), wm.getPath("Page 0", "Page 5000"));
+        assertEquals(Collections.singletonList("Page 3"), wm.getPath("Page 3", "Page 3"));
+        assertEquals(2, wiki.getRequestCount());
+    }
+
+    @Test
+    public void deadlineTest1() {
+        Deadline deadline = Deadline.after(1, TimeUnit.HOURS);
+        Deadline path = deadline.within(1, TimeUnit.MINUTES);
+        assertFalse(path.isExpired());
+        deadline.cancel();
+        assertTrue(deadline.isExpired());
+        assertTrue(path.isExpired());
+        assertTrue(Deadline.after(0, TimeUnit.SECONDS).isExpired());
+        assertFalse(Deadline.none().isExpired());
+    }
+
+    @Test
+    public void deadlineTest2() {
+        SyntheticWikiBackend wiki = new SyntheticWikiBackend(221, 100_000, 50);
+        WikiMediator wm = new WikiMediator(perTitle(wiki), PageStorage.PLAIN);
+
+        long start = System.nanoTime();
+        try {
+            wm.getConnectedPages("Page 0", 4, Deadline.after(200, TimeUnit.MILLISECONDS));
+            fail();
+        } catch (DeadlineExceededException e) {
+            // stopped looking up links at the deadline
+        }
+        long stopped = wiki.getRequestCount();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+        assertTrue(stopped < 100);
+
+        Deadline cancelled = Deadline.none();
+        cancelled.cancel();
+        try {
+            wm.getPath("Page 0", "Page 99999", cancelled);
+            fail();
+        } catch (DeadlineExceededException e) {
+            // stopped before looking up any links
+        }
+        try {
+            wm.executeQuery("get page where category is 'Group 3'", cancelled);
+            fail();
+        } catch (DeadlineExceededException e) {
+            // stopped before looking up the category
+        }
+        assertEquals(stopped, wiki.getRequestCount());
+    }
+
+    /**
+     * @param wiki is not null
+     * @return a backend that passes every call to wiki, looking up batches one title at a time
+     */
+    private static WikiBackend perTitle(final WikiBackend wiki) {
+        return new WikiBackend() {
+            public List<String> search(String query, int limit) {
+                return wiki.search(query, limit);
+            }
+
+            public String getPageText(String title) {
+                return wiki.getPageText(title);
+            }
+
+            public List<String> getLinksOnPage(String title) {
+                return wiki.getLinksOnPage(title);
+            }
+
+            public List<String> whatLinksHere(String title) {
+                return wiki.whatLinksHere(title);
+            }
+
+            public List<String> getCategoryMembers(String category) {
+                return wiki.getCategoryMembers(category);
+            }
+
+            public List<String> getCategoriesOnPage(String title) {
+                return wiki.getCategoriesOnPage(title);
+            }
+
+            public String getLastEditor(String title) {
+                return wiki.getLastEditor(title);
+            }
+
+            public boolean exists(String title) {
+                return wiki.exists(title);
+            }
+
+            public long getRequestCount() {
+                return wiki.getRequestCount();
+            }
+        };
+    }
+
     @Test
     public void executeQueryTest1() {
         WikiMediator wm = new WikiMediator();